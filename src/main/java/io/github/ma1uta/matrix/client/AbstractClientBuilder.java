@@ -16,7 +16,11 @@
 
 package io.github.ma1uta.matrix.client;
 
+import io.github.ma1uta.matrix.client.scheduler.RequestScheduler;
+import io.github.ma1uta.matrix.impl.TransportProfile;
+
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A Client builder.
@@ -27,6 +31,12 @@ public abstract class AbstractClientBuilder<C> {
 
     protected ConnectionInfo connectionInfo = new ConnectionInfo();
 
+    protected RequestScheduler requestScheduler;
+
+    protected ExecutorService executorService;
+
+    protected TransportProfile transport;
+
     protected AbstractClientBuilder() {
     }
 
@@ -63,6 +73,39 @@ public abstract class AbstractClientBuilder<C> {
         return this;
     }
 
+    /**
+     * Specify a request scheduler pacing the requests per endpoint class.
+     *
+     * @param requestScheduler The request scheduler.
+     * @return This builder.
+     */
+    public AbstractClientBuilder<C> requestScheduler(RequestScheduler requestScheduler) {
+        this.requestScheduler = requestScheduler;
+        return this;
+    }
+
+    /**
+     * Specify the executor running the asynchronous requests, shared by all the methods of the client.
+     *
+     * @param executorService The executor.
+     * @return This builder.
+     */
+    public AbstractClientBuilder<C> executorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
+    /**
+     * Specify the transport profile, shared by all the methods of the client.
+     *
+     * @param transport The transport profile.
+     * @return This builder.
+     */
+    public AbstractClientBuilder<C> transport(TransportProfile transport) {
+        this.transport = transport;
+        return this;
+    }
+
     /**
      * Build a new client.
      *
@@ -19,6 +19,8 @@ package io.github.ma1uta.matrix.client;
 import io.github.ma1uta.matrix.client.filter.UserIdClientFilter;
 import io.github.ma1uta.matrix.client.methods.async.AccountAsyncMethods;
 import io.github.ma1uta.matrix.client.methods.blocked.AccountMethods;
+import io.github.ma1uta.matrix.client.scheduler.RequestScheduler;
+import io.github.ma1uta.matrix.impl.TransportProfile;
 import org.eclipse.microprofile.rest.client.RestClientBuilder;
 
 import java.util.Objects;
@@ -41,7 +43,16 @@ public class AppServiceClient extends MatrixClient {
     }
 
     public AppServiceClient(ConnectionInfo connectionInfo, ExecutorService executorService) {
-        super(connectionInfo, executorService);
+        this(connectionInfo, executorService, null);
+    }
+
+    public AppServiceClient(ConnectionInfo connectionInfo, ExecutorService executorService, RequestScheduler requestScheduler) {
+        this(connectionInfo, executorService, requestScheduler, null);
+    }
+
+    public AppServiceClient(ConnectionInfo connectionInfo, ExecutorService executorService, RequestScheduler requestScheduler,
+                            TransportProfile transport) {
+        super(connectionInfo, executorService, requestScheduler, transport);
         String userId = connectionInfo.getUserId();
         Objects.requireNonNull(userId, "UserId must be configured.");
         String accessToken = connectionInfo.getAccessToken();
@@ -64,7 +75,7 @@ public class AppServiceClient extends MatrixClient {
     public AppServiceClient userId(String userId) {
         ConnectionInfo newConnectionInfo = new ConnectionInfo(getConnectionInfo());
         newConnectionInfo.setUserId(userId);
-        return new AppServiceClient(newConnectionInfo, getExecutorService());
+        return new AppServiceClient(newConnectionInfo, getExecutorService(), getRequestScheduler(), getTransport());
     }
 
     /**
@@ -94,7 +105,7 @@ public class AppServiceClient extends MatrixClient {
 
         @Override
         public AppServiceClient newInstance() {
-            return new AppServiceClient(connectionInfo);
+            return new AppServiceClient(connectionInfo, executorService, requestScheduler, transport);
         }
     }
 }
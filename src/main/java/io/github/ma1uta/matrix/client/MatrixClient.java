@@ -72,7 +72,10 @@ import io.github.ma1uta.matrix.client.methods.blocked.TypingMethods;
 import io.github.ma1uta.matrix.client.methods.blocked.UserDirectoryMethods;
 import io.github.ma1uta.matrix.client.methods.blocked.VersionMethods;
 import io.github.ma1uta.matrix.client.methods.blocked.VoipMethods;
+import io.github.ma1uta.matrix.client.scheduler.RequestScheduler;
+import io.github.ma1uta.matrix.client.scheduler.ScheduledRestClientBuilder;
 import io.github.ma1uta.matrix.impl.RestClientBuilderConfigurer;
+import io.github.ma1uta.matrix.impl.TransportProfile;
 import org.eclipse.microprofile.rest.client.RestClientBuilder;
 
 import java.io.Closeable;
@@ -90,6 +93,12 @@ import javax.net.ssl.HostnameVerifier;
  */
 public abstract class MatrixClient implements Closeable {
 
+    /**
+     * Pooled connections of each REST client without a transport profile, the methods can be called from several threads at
+     * the same time.
+     */
+    public static final int CONNECTION_POOL_SIZE = 16;
+
     private volatile URL homeserverURL = null;
     private volatile HostnameVerifier hostnameVerifier = null;
     private final ClientHomeServerResolver homeServerResolver = new ClientHomeServerResolver();
@@ -97,6 +106,9 @@ public abstract class MatrixClient implements Closeable {
     private final AuthorizationFilter authorizationFilter;
     private final ConnectionInfo connectionInfo;
     private final ExecutorService executorService;
+    private final RequestScheduler requestScheduler;
+    private final TransactionIds transactionIds;
+    private final TransportProfile transport;
 
     public MatrixClient(String domain) {
         this(new ConnectionInfo(domain));
@@ -107,9 +119,21 @@ public abstract class MatrixClient implements Closeable {
     }
 
     public MatrixClient(ConnectionInfo connectionInfo, ExecutorService executorService) {
+        this(connectionInfo, executorService, null);
+    }
+
+    public MatrixClient(ConnectionInfo connectionInfo, ExecutorService executorService, RequestScheduler requestScheduler) {
+        this(connectionInfo, executorService, requestScheduler, null);
+    }
+
+    public MatrixClient(ConnectionInfo connectionInfo, ExecutorService executorService, RequestScheduler requestScheduler,
+                        TransportProfile transport) {
         this.connectionInfo = connectionInfo;
         this.authorizationFilter = new AuthorizationFilter(this.connectionInfo);
         this.executorService = executorService;
+        this.requestScheduler = requestScheduler;
+        this.transactionIds = new TransactionIds(this.connectionInfo::getDeviceId);
+        this.transport = transport;
     }
 
     /**
@@ -160,10 +184,48 @@ public abstract class MatrixClient implements Closeable {
         return builder;
     }
 
+    /**
+     * Provides the request scheduler.
+     *
+     * @return the request scheduler or null if the requests are sent at once.
+     */
+    public RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+
+    /**
+     * Provides the transaction ID generator of the sends.
+     *
+     * @return the transaction ID generator.
+     */
+    public TransactionIds getTransactionIds() {
+        return transactionIds;
+    }
+
+    /**
+     * Provides the transport profile.
+     *
+     * @return the transport profile or null if each REST client has its own connections.
+     */
+    public TransportProfile getTransport() {
+        return transport;
+    }
+
     protected RestClientBuilder getClientBuilder() {
+        return getClientBuilder(false);
+    }
+
+    protected RestClientBuilder getClientBuilder(boolean longPoll) {
         RestClientBuilder builder = newClientBuilder();
         ServiceLoader.load(RestClientBuilderConfigurer.class).iterator().forEachRemaining(c -> c.configure(builder));
-        return builder;
+        if (transport != null && hostnameVerifier == null) {
+            transport.configure(builder, longPoll);
+        } else {
+            // the transport doesn't know the hostname verifier of the homeserver, keep the own connections of the REST client
+            builder.property("resteasy.connectionPoolSize", CONNECTION_POOL_SIZE)
+                .property("resteasy.maxPooledPerRoute", CONNECTION_POOL_SIZE);
+        }
+        return requestScheduler != null ? new ScheduledRestClientBuilder(builder, requestScheduler) : builder;
     }
 
     protected <T> T getMethod(Class<T> clazz, Supplier<T> creator) {
@@ -410,7 +472,7 @@ public abstract class MatrixClient implements Closeable {
      * @return the send to device method.
      */
     public SendToDeviceAsyncMethods sendToDeviceAsync() {
-        return getMethod(SendToDeviceAsyncMethods.class, () -> new SendToDeviceAsyncMethods(getClientBuilder()));
+        return getMethod(SendToDeviceAsyncMethods.class, () -> new SendToDeviceAsyncMethods(getClientBuilder(), getTransactionIds()));
     }
 
     /**
@@ -419,7 +481,7 @@ public abstract class MatrixClient implements Closeable {
      * @return the send to device method.
      */
     public SendToDeviceMethods sendToDevice() {
-        return getMethod(SendToDeviceMethods.class, () -> new SendToDeviceMethods(getClientBuilder()));
+        return getMethod(SendToDeviceMethods.class, () -> new SendToDeviceMethods(getClientBuilder(), getTransactionIds()));
     }
 
     /**
@@ -428,7 +490,7 @@ public abstract class MatrixClient implements Closeable {
      * @return sync method.
      */
     public SyncAsyncMethods syncAsync() {
-        return getMethod(SyncAsyncMethods.class, () -> new SyncAsyncMethods(getClientBuilder()));
+        return getMethod(SyncAsyncMethods.class, () -> new SyncAsyncMethods(getClientBuilder(true)));
     }
 
     /**
@@ -437,7 +499,7 @@ public abstract class MatrixClient implements Closeable {
      * @return sync method.
      */
     public SyncMethods sync() {
-        return getMethod(SyncMethods.class, () -> new SyncMethods(getClientBuilder()));
+        return getMethod(SyncMethods.class, () -> new SyncMethods(getClientBuilder(true)));
     }
 
     /**
@@ -446,7 +508,7 @@ public abstract class MatrixClient implements Closeable {
      * @return event methods.
      */
     public EventAsyncMethods eventAsync() {
-        return getMethod(EventAsyncMethods.class, () -> new EventAsyncMethods(getClientBuilder()));
+        return getMethod(EventAsyncMethods.class, () -> new EventAsyncMethods(getClientBuilder(), getTransactionIds()));
     }
 
     /**
@@ -455,7 +517,7 @@ public abstract class MatrixClient implements Closeable {
      * @return event methods.
      */
     public EventMethods event() {
-        return getMethod(EventMethods.class, () -> new EventMethods(getClientBuilder()));
+        return getMethod(EventMethods.class, () -> new EventMethods(getClientBuilder(), getTransactionIds()));
     }
 
     /**
@@ -22,6 +22,8 @@ import io.github.ma1uta.matrix.client.methods.async.AuthAsyncMethods;
 import io.github.ma1uta.matrix.client.methods.blocked.AccountMethods;
 import io.github.ma1uta.matrix.client.methods.blocked.AuthMethods;
 import io.github.ma1uta.matrix.client.model.auth.LoginResponse;
+import io.github.ma1uta.matrix.client.scheduler.RequestScheduler;
+import io.github.ma1uta.matrix.impl.TransportProfile;
 
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -42,7 +44,16 @@ public class StandaloneClient extends MatrixClient {
     }
 
     public StandaloneClient(ConnectionInfo connectionInfo, ExecutorService executorService) {
-        super(connectionInfo, executorService);
+        this(connectionInfo, executorService, null);
+    }
+
+    public StandaloneClient(ConnectionInfo connectionInfo, ExecutorService executorService, RequestScheduler requestScheduler) {
+        this(connectionInfo, executorService, requestScheduler, null);
+    }
+
+    public StandaloneClient(ConnectionInfo connectionInfo, ExecutorService executorService, RequestScheduler requestScheduler,
+                            TransportProfile transport) {
+        super(connectionInfo, executorService, requestScheduler, transport);
     }
 
     /**
@@ -139,7 +150,7 @@ public class StandaloneClient extends MatrixClient {
 
         @Override
         public StandaloneClient newInstance() {
-            return new StandaloneClient(connectionInfo);
+            return new StandaloneClient(connectionInfo, executorService, requestScheduler, transport);
         }
     }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright Anatoliy Sablin tolya@sablin.xyz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.ma1uta.matrix.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Transaction ID generator.
+ * <p/>
+ * The IDs are made of the device ID, the start time of the generator and a counter, so they are unique across the threads of
+ * a client and across its restarts. An ID must be kept for all the attempts of the same send, the homeserver then ignores
+ * the duplicates.
+ */
+public class TransactionIds {
+
+    private final Supplier<String> deviceId;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private final AtomicLong counter = new AtomicLong();
+
+    /**
+     * Creates a generator without a device ID.
+     */
+    public TransactionIds() {
+        this(() -> null);
+    }
+
+    /**
+     * Creates a generator.
+     *
+     * @param deviceId the device ID, read on each ID as it is only known once logged in.
+     */
+    public TransactionIds(Supplier<String> deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    /**
+     * Next transaction ID.
+     *
+     * @return a new transaction ID.
+     */
+    public String next() {
+        String device = deviceId.get();
+        return (device != null && !device.isEmpty() ? device : "txn") + "." + epoch + "." + counter.incrementAndGet();
+    }
+}
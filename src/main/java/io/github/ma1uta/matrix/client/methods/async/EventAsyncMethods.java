@@ -17,6 +17,7 @@
 package io.github.ma1uta.matrix.client.methods.async;
 
 import io.github.ma1uta.matrix.Page;
+import io.github.ma1uta.matrix.client.TransactionIds;
 import io.github.ma1uta.matrix.client.model.event.JoinedMembersResponse;
 import io.github.ma1uta.matrix.client.model.event.MembersResponse;
 import io.github.ma1uta.matrix.client.model.event.RedactRequest;
@@ -47,8 +48,15 @@ public class EventAsyncMethods {
 
     private final Deserializer deserializer;
 
+    private final TransactionIds transactionIds;
+
     public EventAsyncMethods(RestClientBuilder restClientBuilder) {
+        this(restClientBuilder, new TransactionIds());
+    }
+
+    public EventAsyncMethods(RestClientBuilder restClientBuilder, TransactionIds transactionIds) {
         this.eventApi = restClientBuilder.build(EventApi.class);
+        this.transactionIds = transactionIds;
         Iterator<Deserializer> iterator = ServiceLoader.load(Deserializer.class).iterator();
         if (iterator.hasNext()) {
             this.deserializer = iterator.next();
@@ -120,6 +128,20 @@ public class EventAsyncMethods {
         return eventApi.members(roomId).toCompletableFuture();
     }
 
+    /**
+     * Get the list of members for this room filtered by the membership.
+     *
+     * @param roomId        The room to get the member events for.
+     * @param membership    The kind of membership to filter for, null to not filter.
+     * @param notMembership The kind of membership to exclude from the results, null to not exclude.
+     * @return A list of members of the room.
+     */
+    public CompletableFuture<MembersResponse> members(String roomId, String membership, String notMembership) {
+        Objects.requireNonNull(roomId, "RoomId cannot be empty.");
+
+        return eventApi.members(roomId, null, membership, notMembership).toCompletableFuture();
+    }
+
     /**
      * This API returns a map of MXIDs to member info objects for members of the room.
      *
@@ -194,10 +216,25 @@ public class EventAsyncMethods {
      * @return An ID for the sent event.
      */
     public CompletableFuture<SendEventResponse> sendEvent(String roomId, String eventType, EventContent eventContent) {
+        return sendEvent(roomId, eventType, transactionIds.next(), eventContent);
+    }
+
+    /**
+     * Send a message event with the given transaction ID. Sending it again with the same ID is safe, the homeserver
+     * returns the event already sent.
+     *
+     * @param roomId       The room to send the event to.
+     * @param eventType    The type of event to send.
+     * @param txnId        The transaction ID, see {@link TransactionIds}.
+     * @param eventContent The event content.
+     * @return An ID for the sent event.
+     */
+    public CompletableFuture<SendEventResponse> sendEvent(String roomId, String eventType, String txnId, EventContent eventContent) {
         Objects.requireNonNull(roomId, "RoomId cannot be empty.");
         Objects.requireNonNull(eventType, "EventType cannot be empty.");
+        Objects.requireNonNull(txnId, "TxnId cannot be empty.");
 
-        return eventApi.sendEvent(roomId, eventType, Long.toString(System.currentTimeMillis()), eventContent).toCompletableFuture();
+        return eventApi.sendEvent(roomId, eventType, txnId, eventContent).toCompletableFuture();
     }
 
     /**
@@ -214,7 +251,7 @@ public class EventAsyncMethods {
 
         RedactRequest request = new RedactRequest();
         request.setReason(reason);
-        return eventApi.redact(roomId, eventId, Long.toString(System.currentTimeMillis()), request).toCompletableFuture();
+        return eventApi.redact(roomId, eventId, transactionIds.next(), request).toCompletableFuture();
     }
 
     /**
@@ -17,6 +17,7 @@
 package io.github.ma1uta.matrix.client.methods.async;
 
 import io.github.ma1uta.matrix.EmptyResponse;
+import io.github.ma1uta.matrix.client.TransactionIds;
 import io.github.ma1uta.matrix.client.model.sendtodevice.SendToDeviceRequest;
 import io.github.ma1uta.matrix.client.rest.async.SendToDeviceApi;
 import org.eclipse.microprofile.rest.client.RestClientBuilder;
@@ -31,8 +32,15 @@ public class SendToDeviceAsyncMethods {
 
     private final SendToDeviceApi sendToDeviceApi;
 
+    private final TransactionIds transactionIds;
+
     public SendToDeviceAsyncMethods(RestClientBuilder restClientBuilder) {
+        this(restClientBuilder, new TransactionIds());
+    }
+
+    public SendToDeviceAsyncMethods(RestClientBuilder restClientBuilder, TransactionIds transactionIds) {
         this.sendToDeviceApi = restClientBuilder.build(SendToDeviceApi.class);
+        this.transactionIds = transactionIds;
     }
 
     /**
@@ -45,6 +53,6 @@ public class SendToDeviceAsyncMethods {
     public CompletableFuture<EmptyResponse> sendToDevice(String eventType, SendToDeviceRequest request) {
         Objects.requireNonNull(eventType, "RoomId cannot be empty.");
 
-        return sendToDeviceApi.send(eventType, Long.toString(System.currentTimeMillis()), request).toCompletableFuture();
+        return sendToDeviceApi.send(eventType, transactionIds.next(), request).toCompletableFuture();
     }
 }
@@ -17,6 +17,7 @@
 package io.github.ma1uta.matrix.client.methods.blocked;
 
 import io.github.ma1uta.matrix.Page;
+import io.github.ma1uta.matrix.client.TransactionIds;
 import io.github.ma1uta.matrix.client.model.event.JoinedMembersResponse;
 import io.github.ma1uta.matrix.client.model.event.MembersResponse;
 import io.github.ma1uta.matrix.client.model.event.RedactRequest;
@@ -46,8 +47,15 @@ public class EventMethods {
 
     private final Deserializer deserializer;
 
+    private final TransactionIds transactionIds;
+
     public EventMethods(RestClientBuilder restClientBuilder) {
+        this(restClientBuilder, new TransactionIds());
+    }
+
+    public EventMethods(RestClientBuilder restClientBuilder, TransactionIds transactionIds) {
         this.eventApi = restClientBuilder.build(EventApi.class);
+        this.transactionIds = transactionIds;
         Iterator<Deserializer> iterator = ServiceLoader.load(Deserializer.class).iterator();
         if (iterator.hasNext()) {
             this.deserializer = iterator.next();
@@ -116,6 +124,20 @@ public class EventMethods {
         return eventApi.members(roomId);
     }
 
+    /**
+     * Get the list of members for this room filtered by the membership.
+     *
+     * @param roomId        The room to get the member events for.
+     * @param membership    The kind of membership to filter for, null to not filter.
+     * @param notMembership The kind of membership to exclude from the results, null to not exclude.
+     * @return A list of members of the room.
+     */
+    public MembersResponse members(String roomId, String membership, String notMembership) {
+        Objects.requireNonNull(roomId, "RoomId cannot be empty.");
+
+        return eventApi.members(roomId, null, membership, notMembership);
+    }
+
     /**
      * This API returns a map of MXIDs to member info objects for members of the room.
      *
@@ -190,10 +212,25 @@ public class EventMethods {
      * @return An ID for the sent event.
      */
     public SendEventResponse sendEvent(String roomId, String eventType, EventContent eventContent) {
+        return sendEvent(roomId, eventType, transactionIds.next(), eventContent);
+    }
+
+    /**
+     * Send a message event with the given transaction ID. Sending it again with the same ID is safe, the homeserver
+     * returns the event already sent.
+     *
+     * @param roomId       The room to send the event to.
+     * @param eventType    The type of event to send.
+     * @param txnId        The transaction ID, see {@link TransactionIds}.
+     * @param eventContent The event content.
+     * @return An ID for the sent event.
+     */
+    public SendEventResponse sendEvent(String roomId, String eventType, String txnId, EventContent eventContent) {
         Objects.requireNonNull(roomId, "RoomId cannot be empty.");
         Objects.requireNonNull(eventType, "EventType cannot be empty.");
+        Objects.requireNonNull(txnId, "TxnId cannot be empty.");
 
-        return eventApi.sendEvent(roomId, eventType, Long.toString(System.currentTimeMillis()), eventContent);
+        return eventApi.sendEvent(roomId, eventType, txnId, eventContent);
     }
 
     /**
@@ -210,7 +247,7 @@ public class EventMethods {
 
         RedactRequest request = new RedactRequest();
         request.setReason(reason);
-        return eventApi.redact(roomId, eventId, Long.toString(System.currentTimeMillis()), request);
+        return eventApi.redact(roomId, eventId, transactionIds.next(), request);
     }
 
     /**
@@ -17,6 +17,7 @@
 package io.github.ma1uta.matrix.client.methods.blocked;
 
 import io.github.ma1uta.matrix.EmptyResponse;
+import io.github.ma1uta.matrix.client.TransactionIds;
 import io.github.ma1uta.matrix.client.model.sendtodevice.SendToDeviceRequest;
 import io.github.ma1uta.matrix.client.rest.blocked.SendToDeviceApi;
 import org.eclipse.microprofile.rest.client.RestClientBuilder;
@@ -30,8 +31,15 @@ public class SendToDeviceMethods {
 
     private final SendToDeviceApi sendToDeviceApi;
 
+    private final TransactionIds transactionIds;
+
     public SendToDeviceMethods(RestClientBuilder restClientBuilder) {
+        this(restClientBuilder, new TransactionIds());
+    }
+
+    public SendToDeviceMethods(RestClientBuilder restClientBuilder, TransactionIds transactionIds) {
         this.sendToDeviceApi = restClientBuilder.build(SendToDeviceApi.class);
+        this.transactionIds = transactionIds;
     }
 
     /**
@@ -44,6 +52,6 @@ public class SendToDeviceMethods {
     public EmptyResponse sendToDevice(String eventType, SendToDeviceRequest request) {
         Objects.requireNonNull(eventType, "RoomId cannot be empty.");
 
-        return sendToDeviceApi.send(eventType, Long.toString(System.currentTimeMillis()), request);
+        return sendToDeviceApi.send(eventType, transactionIds.next(), request);
     }
 }
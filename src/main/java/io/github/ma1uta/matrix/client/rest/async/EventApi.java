@@ -125,6 +125,32 @@ public interface EventApi {
         @PathParam("roomId") String roomId
     );
 
+    /**
+     * Get the list of members for this room filtered by the membership.
+     * <br>
+     * <b>Requires auth</b>: Yes.
+     * <br>
+     * Return: {@link MembersResponse}.
+     * <p>Status code 200: A list of members of the room. If you are joined to the room then this will be the current
+     * members of the room. If you have left the room then this will be the members of the room when you left.</p>
+     * <p>Status code 403: You aren't a member of the room and weren't previously a member of the room.</p>
+     *
+     * @param roomId        Required. The room to get the member events for.
+     * @param at            The point in time (pagination token) to return members for in the room. This token can be obtained
+     *                      from a prev_batch token returned for each room by the sync API. Defaults to the current state of the room.
+     * @param membership    The kind of membership to filter for. Defaults to no filtering if unspecified.
+     * @param notMembership The kind of membership to exclude from the results. Defaults to no filtering if unspecified.
+     * @return room members.
+     */
+    @GET
+    @Path("/{roomId}/members")
+    CompletionStage<MembersResponse> members(
+        @PathParam("roomId") String roomId,
+        @QueryParam("at") String at,
+        @QueryParam("membership") String membership,
+        @QueryParam("not_membership") String notMembership
+    );
+
     /**
      * This API returns a map of MXIDs to member info objects for members of the room. The current user must be in the room for
      * it to work, unless it is an Application Service in which case any of the AS's users must be in the room. This API
@@ -0,0 +1,48 @@
+/*
+ * Copyright Anatoliy Sablin tolya@sablin.xyz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.ma1uta.matrix.client.scheduler;
+
+/**
+ * Classes of the client-server endpoints sharing the same rate limit.
+ */
+public enum EndpointClass {
+
+    /**
+     * The sync long polling, never throttled.
+     */
+    SYNC,
+
+    /**
+     * Join, leave, invite, kick, ban and unban.
+     */
+    MEMBERSHIP,
+
+    /**
+     * Events, redactions, receipts and typing notifications sent to the rooms.
+     */
+    MESSAGE,
+
+    /**
+     * The other reads.
+     */
+    READ,
+
+    /**
+     * Everything else.
+     */
+    OTHER
+}
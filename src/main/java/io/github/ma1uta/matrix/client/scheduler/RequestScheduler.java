@@ -0,0 +1,515 @@
+/*
+ * Copyright Anatoliy Sablin tolya@sablin.xyz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.ma1uta.matrix.client.scheduler;
+
+import io.github.ma1uta.matrix.RateLimitedErrorResponse;
+import io.github.ma1uta.matrix.client.filter.ErrorFilter;
+import io.github.ma1uta.matrix.impl.exception.MatrixException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.ProcessingException;
+
+/**
+ * Outbound request scheduler.
+ * <p/>
+ * Every request (but the sync) takes a token from the bucket of its endpoint class and a slot among the concurrent requests.
+ * A rate limited response (429) pauses the bucket for the retry_after_ms delay and the request is sent again, up to the max
+ * retries. The blocked requests wait on the calling thread, the asynchronous ones are delayed on a timer.
+ * <p/>
+ * A request carrying a transaction ID is idempotent: it is also sent again after a transient failure (timeout, connection
+ * error, server error), with the same arguments and so the same transaction ID, the homeserver ignoring the duplicates.
+ */
+public class RequestScheduler implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestScheduler.class);
+
+    /**
+     * Default count of the requests in flight.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT = 8;
+
+    /**
+     * Default count of the retries of a rate limited request.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 5;
+
+    /**
+     * Retry delay when the rate limited response has no retry_after_ms.
+     */
+    public static final long DEFAULT_RETRY_AFTER_MS = 1000L;
+
+    /**
+     * Longest delay before sending again an idempotent request after a transient failure.
+     */
+    public static final long MAX_RESEND_DELAY_MS = 30000L;
+
+    private static final long NOT_RATE_LIMITED = -1L;
+
+    private static final long NO_RETRY = -1L;
+
+    private static final String TXN_ID = "txnId";
+
+    private static final int SERVER_ERROR_STATUS = 500;
+
+    private final Map<EndpointClass, TokenBucket> buckets = new EnumMap<>(EndpointClass.class);
+
+    private final Map<Method, EndpointClass> endpointClasses = new ConcurrentHashMap<>();
+
+    private final Map<Method, Boolean> idempotentMethods = new ConcurrentHashMap<>();
+
+    private final int maxConcurrent;
+
+    private final Semaphore inFlight;
+
+    private final Queue<Runnable> parked = new ConcurrentLinkedQueue<>();
+
+    private final int maxRetries;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "RequestScheduler-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong executed = new AtomicLong();
+
+    private final AtomicLong throttled = new AtomicLong();
+
+    private final AtomicLong retried = new AtomicLong();
+
+    private final AtomicLong resent = new AtomicLong();
+
+    public RequestScheduler() {
+        this(DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * Creates a scheduler with the default buckets, close to the default limits of the homeservers.
+     *
+     * @param maxConcurrent the count of requests in flight.
+     * @param maxRetries    the count of retries of a rate limited request.
+     */
+    public RequestScheduler(int maxConcurrent, int maxRetries) {
+        this.maxConcurrent = maxConcurrent;
+        this.inFlight = new Semaphore(maxConcurrent);
+        this.maxRetries = maxRetries;
+        bucket(EndpointClass.MEMBERSHIP, 0.5, 10);
+        bucket(EndpointClass.MESSAGE, 1, 10);
+        bucket(EndpointClass.READ, 10, 20);
+        bucket(EndpointClass.OTHER, 5, 10);
+    }
+
+    /**
+     * Set the rate of an endpoint class.
+     *
+     * @param endpointClass    the endpoint class.
+     * @param permitsPerSecond the sustained rate.
+     * @param burst            the count of requests allowed at once.
+     * @return this scheduler.
+     */
+    public RequestScheduler bucket(EndpointClass endpointClass, double permitsPerSecond, int burst) {
+        if (endpointClass == EndpointClass.SYNC) {
+            throw new IllegalArgumentException("The sync is never throttled.");
+        }
+        synchronized (buckets) {
+            buckets.put(endpointClass, new TokenBucket(permitsPerSecond, burst));
+        }
+        return this;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Count of the requests waiting for a token or a slot.
+     *
+     * @return the waiting requests.
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getInFlight() {
+        return maxConcurrent - inFlight.availablePermits();
+    }
+
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    /**
+     * Count of the requests which had to wait for a token.
+     *
+     * @return the throttled requests.
+     */
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * Count of the rate limited requests sent again.
+     *
+     * @return the retried requests.
+     */
+    public long getRetried() {
+        return retried.get();
+    }
+
+    /**
+     * Count of the idempotent requests sent again after a transient failure.
+     *
+     * @return the resent requests.
+     */
+    public long getResent() {
+        return resent.get();
+    }
+
+    /**
+     * Wraps a REST client so every call goes through this scheduler.
+     *
+     * @param api    the REST client interface.
+     * @param target the REST client.
+     * @param <T>    the REST client type.
+     * @return the scheduled REST client.
+     */
+    public <T> T wrap(Class<T> api, T target) {
+        return api.cast(Proxy.newProxyInstance(api.getClassLoader(), new Class<?>[] {api}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return invoke(target, method, args);
+            }
+            EndpointClass endpointClass = endpointClasses.computeIfAbsent(method, RequestScheduler::classify);
+            boolean idempotent = idempotentMethods.computeIfAbsent(method, RequestScheduler::isIdempotent);
+            if (CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+                return executeAsync(endpointClass, idempotent, () -> (CompletionStage<?>) invoke(target, method, args));
+            }
+            return execute(endpointClass, idempotent, () -> invoke(target, method, args));
+        }));
+    }
+
+    /**
+     * Sends a blocked request.
+     *
+     * @param endpointClass the endpoint class of the request.
+     * @param request       the request.
+     * @param <T>           the response type.
+     * @return the response.
+     * @throws Exception when the request failed.
+     */
+    public <T> T execute(EndpointClass endpointClass, Callable<T> request) throws Exception {
+        return execute(endpointClass, false, request);
+    }
+
+    /**
+     * Sends a blocked request.
+     *
+     * @param endpointClass the endpoint class of the request.
+     * @param idempotent    the request can be sent again after a transient failure.
+     * @param request       the request.
+     * @param <T>           the response type.
+     * @return the response.
+     * @throws Exception when the request failed.
+     */
+    public <T> T execute(EndpointClass endpointClass, boolean idempotent, Callable<T> request) throws Exception {
+        if (endpointClass == EndpointClass.SYNC) {
+            return request.call();
+        }
+
+        for (int attempt = 0; ; attempt++) {
+            long wait = reserve(endpointClass);
+            try {
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting to send the request.");
+            } finally {
+                queued.decrementAndGet();
+            }
+
+            long delay;
+            try {
+                executed.incrementAndGet();
+                return request.call();
+            } catch (RuntimeException e) {
+                delay = retryDelay(endpointClass, idempotent, e, attempt);
+                if (delay == NO_RETRY) {
+                    throw e;
+                }
+            } finally {
+                release();
+            }
+
+            if (delay > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while waiting to send the request again.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends an asynchronous request.
+     *
+     * @param endpointClass the endpoint class of the request.
+     * @param request       the request.
+     * @param <T>           the response type.
+     * @return the response.
+     */
+    public <T> CompletableFuture<T> executeAsync(EndpointClass endpointClass, Supplier<CompletionStage<T>> request) {
+        return executeAsync(endpointClass, false, request);
+    }
+
+    /**
+     * Sends an asynchronous request.
+     *
+     * @param endpointClass the endpoint class of the request.
+     * @param idempotent    the request can be sent again after a transient failure.
+     * @param request       the request.
+     * @param <T>           the response type.
+     * @return the response.
+     */
+    public <T> CompletableFuture<T> executeAsync(EndpointClass endpointClass, boolean idempotent, Supplier<CompletionStage<T>> request) {
+        if (endpointClass == EndpointClass.SYNC) {
+            return request.get().toCompletableFuture();
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(endpointClass, idempotent, request, result, 0);
+        return result;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private <T> void attempt(EndpointClass endpointClass, boolean idempotent, Supplier<CompletionStage<T>> request,
+                             CompletableFuture<T> result, int attempt) {
+        long wait = reserve(endpointClass);
+        timer.schedule(() -> whenPermitted(() -> {
+            queued.decrementAndGet();
+            executed.incrementAndGet();
+            CompletionStage<T> response;
+            try {
+                response = request.get();
+            } catch (RuntimeException e) {
+                release();
+                result.completeExceptionally(e);
+                return;
+            }
+            response.whenComplete((value, error) -> {
+                release();
+                if (error == null) {
+                    result.complete(value);
+                    return;
+                }
+                long delay = retryDelay(endpointClass, idempotent, error, attempt);
+                if (delay == NO_RETRY) {
+                    result.completeExceptionally(error);
+                } else if (delay == 0) {
+                    attempt(endpointClass, idempotent, request, result, attempt + 1);
+                } else {
+                    timer.schedule(() -> attempt(endpointClass, idempotent, request, result, attempt + 1), delay, TimeUnit.MILLISECONDS);
+                }
+            });
+        }), wait, TimeUnit.NANOSECONDS);
+    }
+
+    private long reserve(EndpointClass endpointClass) {
+        TokenBucket bucket;
+        synchronized (buckets) {
+            bucket = buckets.get(endpointClass);
+        }
+        queued.incrementAndGet();
+        long wait = bucket.reserve();
+        if (wait > 0) {
+            throttled.incrementAndGet();
+        }
+        return wait;
+    }
+
+    // NO_RETRY, 0 when the bucket has been paused, or the delay before sending the request again
+    private long retryDelay(EndpointClass endpointClass, boolean idempotent, Throwable error, int attempt) {
+        if (attempt >= maxRetries) {
+            return NO_RETRY;
+        }
+
+        long retryAfter = retryAfter(error);
+        if (retryAfter != NOT_RATE_LIMITED) {
+            retry(endpointClass, retryAfter);
+            return 0;
+        }
+
+        if (idempotent && isTransient(error)) {
+            resent.incrementAndGet();
+            long delay = Math.min(MAX_RESEND_DELAY_MS, DEFAULT_RETRY_AFTER_MS << attempt);
+            LOGGER.warn("Transient failure on {} ({}), sent again after {} milliseconds", endpointClass, error.toString(), delay);
+            return delay;
+        }
+
+        return NO_RETRY;
+    }
+
+    private void retry(EndpointClass endpointClass, long retryAfter) {
+        retried.incrementAndGet();
+        LOGGER.warn("Rate limited on {}, retry after {} milliseconds", endpointClass, retryAfter);
+        synchronized (buckets) {
+            buckets.get(endpointClass).pause(retryAfter);
+        }
+    }
+
+    // the asynchronous requests never block a thread waiting for a slot: they are parked and started on the next release
+    private void whenPermitted(Runnable start) {
+        parked.add(start);
+        drain();
+    }
+
+    private void release() {
+        inFlight.release();
+        drain();
+    }
+
+    private void drain() {
+        while (!parked.isEmpty() && inFlight.tryAcquire()) {
+            Runnable next = parked.poll();
+            if (next == null) {
+                inFlight.release();
+            } else {
+                timer.execute(next);
+            }
+        }
+    }
+
+    private static long retryAfter(Throwable e) {
+        return MatrixException.find(e)
+            .filter(matrixException -> Integer.valueOf(ErrorFilter.RATE_LIMIT_RESPONSE_STATUS).equals(matrixException.getStatus()))
+            .map(matrixException -> {
+                Object response = matrixException.getResponse();
+                if (response instanceof RateLimitedErrorResponse && ((RateLimitedErrorResponse) response).getRetryAfterMs() != null) {
+                    return ((RateLimitedErrorResponse) response).getRetryAfterMs();
+                }
+                return DEFAULT_RETRY_AFTER_MS;
+            })
+            .orElse(NOT_RATE_LIMITED);
+    }
+
+    // the request may not have reached the homeserver, or the homeserver failed to handle it
+    private static boolean isTransient(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof MatrixException) {
+                Integer status = ((MatrixException) current).getStatus();
+                return status != null && status >= SERVER_ERROR_STATUS;
+            }
+            if (current instanceof IOException || current instanceof TimeoutException || current instanceof ProcessingException) {
+                return true;
+            }
+            if (current.getCause() == current) {
+                break;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Check if a REST client method carries a transaction ID, sending it twice has then the effect of sending it once.
+     *
+     * @param method the REST client method.
+     * @return true if the request can be sent again.
+     */
+    public static boolean isIdempotent(Method method) {
+        for (Annotation[] annotations : method.getParameterAnnotations()) {
+            for (Annotation annotation : annotations) {
+                if (annotation instanceof PathParam && TXN_ID.equals(((PathParam) annotation).value())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the endpoint class of a REST client method from its path.
+     *
+     * @param method the REST client method.
+     * @return the endpoint class.
+     */
+    public static EndpointClass classify(Method method) {
+        Path path = method.getAnnotation(Path.class);
+        String value = path != null ? path.value() : "";
+        if (value.equals("/sync")) {
+            return EndpointClass.SYNC;
+        }
+        if (value.startsWith("/join/") || value.matches(".*/(join|leave|forget|invite|kick|ban|unban)/?")) {
+            return EndpointClass.MEMBERSHIP;
+        }
+        if (value.matches(".*/(send|redact|receipt|typing|read_markers)(/.*)?")) {
+            return EndpointClass.MESSAGE;
+        }
+        if (method.isAnnotationPresent(GET.class)) {
+            return EndpointClass.READ;
+        }
+        return EndpointClass.OTHER;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright Anatoliy Sablin tolya@sablin.xyz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.ma1uta.matrix.client.scheduler;
+
+import org.eclipse.microprofile.rest.client.RestClientBuilder;
+import org.eclipse.microprofile.rest.client.RestClientDefinitionException;
+
+import java.net.URI;
+import java.net.URL;
+import java.security.KeyStore;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.ws.rs.core.Configuration;
+
+/**
+ * REST client builder building the REST clients through a {@link RequestScheduler}.
+ */
+public class ScheduledRestClientBuilder implements RestClientBuilder {
+
+    private final RestClientBuilder delegate;
+
+    private final RequestScheduler scheduler;
+
+    public ScheduledRestClientBuilder(RestClientBuilder delegate, RequestScheduler scheduler) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public <T> T build(Class<T> clazz) throws IllegalStateException, RestClientDefinitionException {
+        return scheduler.wrap(clazz, delegate.build(clazz));
+    }
+
+    @Override
+    public RestClientBuilder baseUrl(URL url) {
+        delegate.baseUrl(url);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder baseUri(URI uri) {
+        delegate.baseUri(uri);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder connectTimeout(long timeout, TimeUnit unit) {
+        delegate.connectTimeout(timeout, unit);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder readTimeout(long timeout, TimeUnit unit) {
+        delegate.readTimeout(timeout, unit);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder executorService(ExecutorService executor) {
+        delegate.executorService(executor);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder sslContext(SSLContext sslContext) {
+        delegate.sslContext(sslContext);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder trustStore(KeyStore trustStore) {
+        delegate.trustStore(trustStore);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder keyStore(KeyStore keyStore, String keystorePassword) {
+        delegate.keyStore(keyStore, keystorePassword);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder hostnameVerifier(HostnameVerifier hostnameVerifier) {
+        delegate.hostnameVerifier(hostnameVerifier);
+        return this;
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return delegate.getConfiguration();
+    }
+
+    @Override
+    public RestClientBuilder property(String name, Object value) {
+        delegate.property(name, value);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder register(Class<?> componentClass) {
+        delegate.register(componentClass);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder register(Class<?> componentClass, int priority) {
+        delegate.register(componentClass, priority);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder register(Class<?> componentClass, Class<?>... contracts) {
+        delegate.register(componentClass, contracts);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder register(Class<?> componentClass, Map<Class<?>, Integer> contracts) {
+        delegate.register(componentClass, contracts);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder register(Object component) {
+        delegate.register(component);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder register(Object component, int priority) {
+        delegate.register(component, priority);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder register(Object component, Class<?>... contracts) {
+        delegate.register(component, contracts);
+        return this;
+    }
+
+    @Override
+    public RestClientBuilder register(Object component, Map<Class<?>, Integer> contracts) {
+        delegate.register(component, contracts);
+        return this;
+    }
+}
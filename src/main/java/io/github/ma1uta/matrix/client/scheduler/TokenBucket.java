@@ -0,0 +1,97 @@
+/*
+ * Copyright Anatoliy Sablin tolya@sablin.xyz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.ma1uta.matrix.client.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket of an endpoint class.
+ * <p/>
+ * The tokens are reserved ahead: a request takes its token at once and waits the returned delay, so the waiting requests
+ * are served in the order they arrived. A rate limited response pauses the whole bucket: no token is added during the
+ * pause, so the requests waiting for it are spread at the sustained rate after it instead of sent all at once.
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double permitsPerSecond;
+
+    private final double burst;
+
+    private double tokens;
+
+    // the tokens are added from this time, in the future while paused
+    private long lastRefillNanos;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param permitsPerSecond the sustained rate.
+     * @param burst            the count of requests allowed at once.
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate must be positive and the burst at least 1.");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return (int) burst;
+    }
+
+    /**
+     * Reserves a token.
+     *
+     * @return the delay in nanoseconds to wait before the request can be sent.
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        refill(now);
+        tokens -= 1;
+        long pause = Math.max(0, lastRefillNanos - now);
+        long deficit = tokens < 0 ? (long) (-tokens / permitsPerSecond * NANOS_PER_SECOND) : 0;
+        return pause + deficit;
+    }
+
+    /**
+     * Stops serving the requests for a while.
+     *
+     * @param delayMillis the pause in milliseconds.
+     */
+    public synchronized void pause(long delayMillis) {
+        long now = System.nanoTime();
+        refill(now);
+        lastRefillNanos = Math.max(lastRefillNanos, now + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+    }
+
+    private void refill(long now) {
+        if (now <= lastRefillNanos) {
+            return;
+        }
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * permitsPerSecond / NANOS_PER_SECOND);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright Anatoliy Sablin tolya@sablin.xyz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.ma1uta.matrix.client.sync;
+
+import io.github.ma1uta.matrix.client.methods.blocked.SyncMethods;
+import io.github.ma1uta.matrix.client.model.sync.SyncResponse;
+import io.github.ma1uta.matrix.impl.exception.MatrixException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.HttpURLConnection;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Runnable to receive events and other data from the server with the fetching and the processing in two stages.
+ * <br>
+ * The thread running this loop only long-polls the server with the latest {@code next_batch} token. Each response is handed
+ * to a processing thread through a bounded queue, when the queue is full the fetching stage waits (backpressure) until the
+ * processing stage catches up.
+ * <br>
+ * The full state is only requested once, for the first batch. The listener receives a copy of the parameters used for
+ * its batch, setting {@link SyncParams#setTerminate(boolean)} on this copy stops the loop.
+ * <br>
+ * When the loop is started with a stored {@code next_batch} token and the server rejects it, the loop falls back to a full
+ * state sync without token, the listener sees it with {@link SyncParams#isFullState()}.
+ */
+public class PipelinedSyncLoop implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelinedSyncLoop.class);
+
+    /**
+     * Default count of the fetched batches waiting for the processing stage.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    private static final Batch STOP = new Batch(null, null);
+
+    private final SyncMethods syncMethods;
+    private final BiConsumer<SyncResponse, SyncParams> inboundListener;
+    private final BlockingQueue<Batch> queue;
+    private final int queueCapacity;
+    private final SyncParams state = new SyncParams();
+    private SyncParams init = null;
+
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final AtomicLong fetchedBatches = new AtomicLong();
+    private final AtomicLong processedBatches = new AtomicLong();
+    private final AtomicLong backpressureMillis = new AtomicLong();
+
+    public PipelinedSyncLoop(SyncMethods syncMethods, BiConsumer<SyncResponse, SyncParams> inboundListener) {
+        this(syncMethods, inboundListener, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public PipelinedSyncLoop(SyncMethods syncMethods, BiConsumer<SyncResponse, SyncParams> inboundListener, int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("The queue capacity must be positive.");
+        }
+        this.syncMethods = syncMethods;
+        this.inboundListener = inboundListener;
+        this.queueCapacity = queueCapacity;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public SyncParams getInit() {
+        return init;
+    }
+
+    public void setInit(SyncParams init) {
+        this.init = init;
+    }
+
+    /**
+     * Change the filter, the new filter is used from the next long-poll.
+     *
+     * @param filter The filter ID or the JSON filter, null to remove the filter.
+     */
+    public void setFilter(String filter) {
+        SyncParams initParams = getInit();
+        if (initParams != null) {
+            initParams.setFilter(filter);
+        }
+        state.setFilter(filter);
+    }
+
+    /**
+     * Stop the loop after the current long-poll.
+     */
+    public void terminate() {
+        state.setTerminate(true);
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Get the count of fetched batches waiting for the processing stage.
+     *
+     * @return the current queue depth.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Get the highest queue depth seen since the loop started.
+     *
+     * @return the peak queue depth.
+     */
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    public long getFetchedBatches() {
+        return fetchedBatches.get();
+    }
+
+    public long getProcessedBatches() {
+        return processedBatches.get();
+    }
+
+    /**
+     * Get the total time the fetching stage waited for a free slot in the queue.
+     *
+     * @return the backpressure time in milliseconds.
+     */
+    public long getBackpressureMillis() {
+        return backpressureMillis.get();
+    }
+
+    @Override
+    public void run() {
+        Objects.requireNonNull(syncMethods, "The Matrix client must be specified.");
+        Objects.requireNonNull(inboundListener, "Not found inbound listeners, the sync will erase the response.");
+
+        if (getInit() != null) {
+            state.from(getInit());
+        }
+
+        Thread processor = new Thread(this::process, "SyncLoop-processor");
+        processor.start();
+
+        LOGGER.info("SyncLoop started (pipelined, queue capacity {})", queueCapacity);
+        try {
+            while (!(Thread.interrupted() || state.isTerminate())) {
+                try {
+                    SyncResponse sync = syncMethods.sync(
+                        state.getFilter(),
+                        state.getNextBatch(),
+                        state.isFullState(),
+                        state.getPresence(),
+                        state.getTimeout()
+                    );
+                    state.setNextBatch(sync.getNextBatch());
+                    SyncParams batchParams = new SyncParams(state);
+                    state.setFullState(false);
+                    fetchedBatches.incrementAndGet();
+
+                    enqueue(new Batch(sync, batchParams));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    if (isRejectedToken(e)) {
+                        LOGGER.warn("The server rejected the next batch token {}, restarting with a full state sync",
+                            state.getNextBatch());
+                        state.setNextBatch(null);
+                        state.setFullState(true);
+                    } else {
+                        LOGGER.error("Exception: ", e);
+                    }
+                }
+            }
+        } finally {
+            stopProcessor(processor);
+        }
+        LOGGER.info("SyncLoop stopped");
+    }
+
+    private boolean isRejectedToken(Exception e) {
+        // only the token given at start can be stale, the next ones come from the server
+        if (fetchedBatches.get() > 0 || state.getNextBatch() == null) {
+            return false;
+        }
+        return MatrixException.find(e)
+            .map(MatrixException::getStatus)
+            .filter(status -> status == HttpURLConnection.HTTP_BAD_REQUEST || status == HttpURLConnection.HTTP_NOT_FOUND)
+            .isPresent();
+    }
+
+    private void enqueue(Batch batch) throws InterruptedException {
+        if (!queue.offer(batch)) {
+            long start = System.nanoTime();
+            queue.put(batch);
+            long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            backpressureMillis.addAndGet(waited);
+            LOGGER.debug("Sync processing is late, fetching waited {} ms", waited);
+        }
+        peakQueueDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    private void process() {
+        while (true) {
+            Batch batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (batch == STOP) {
+                return;
+            }
+
+            try {
+                inboundListener.accept(batch.response, batch.params);
+                if (batch.params.isTerminate()) {
+                    state.setTerminate(true);
+                }
+            } catch (Exception e) {
+                LOGGER.error("Exception: ", e);
+            }
+            processedBatches.incrementAndGet();
+        }
+    }
+
+    private void stopProcessor(Thread processor) {
+        // already fetched batches are processed before stopping, their token has been consumed
+        boolean interrupted = Thread.interrupted();
+        try {
+            queue.put(STOP);
+            processor.join();
+        } catch (InterruptedException e) {
+            interrupted = true;
+            processor.interrupt();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Batch {
+
+        private final SyncResponse response;
+        private final SyncParams params;
+
+        private Batch(SyncResponse response, SyncParams params) {
+            this.response = response;
+            this.params = params;
+        }
+    }
+}
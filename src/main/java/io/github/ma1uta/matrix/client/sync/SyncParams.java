@@ -21,7 +21,7 @@ package io.github.ma1uta.matrix.client.sync;
  */
 public class SyncParams {
 
-    private String filter;
+    private volatile String filter;
 
     private String nextBatch;
 
@@ -31,7 +31,7 @@ public class SyncParams {
 
     private String presence;
 
-    private boolean terminate = false;
+    private volatile boolean terminate = false;
 
     public SyncParams() {
     }
@@ -16,11 +16,14 @@
 
 package io.github.ma1uta.matrix.event;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.github.ma1uta.matrix.event.content.EventContent;
 import io.swagger.v3.oas.annotations.media.Schema;
 
+import java.util.function.Supplier;
 import javax.json.bind.annotation.JsonbProperty;
+import javax.json.bind.annotation.JsonbTransient;
 
 /**
  * Event.
@@ -63,12 +66,41 @@ public abstract class Event<C extends EventContent> {
     )
     private C content;
 
+    private transient volatile Supplier<C> lazyContent;
+
+    /**
+     * Provides the event content. The lazy content is decoded once, on the first call from any thread.
+     *
+     * @return the event content.
+     */
     public C getContent() {
+        if (lazyContent != null) {
+            synchronized (this) {
+                Supplier<C> loader = lazyContent;
+                if (loader != null) {
+                    content = loader.get();
+                    // the volatile write publishes the content to the threads seeing the loader cleared
+                    lazyContent = null;
+                }
+            }
+        }
         return content;
     }
 
     public void setContent(C content) {
         this.content = content;
+        this.lazyContent = null;
+    }
+
+    /**
+     * Defers the decoding of the event content to the first {@link #getContent()} call.
+     *
+     * @param lazyContent the content loader.
+     */
+    @JsonIgnore
+    @JsonbTransient
+    public void setLazyContent(Supplier<C> lazyContent) {
+        this.lazyContent = lazyContent;
     }
 
     /**
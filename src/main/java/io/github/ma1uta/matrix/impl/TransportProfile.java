@@ -0,0 +1,43 @@
+/*
+ * Copyright Anatoliy Sablin tolya@sablin.xyz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.ma1uta.matrix.impl;
+
+import org.eclipse.microprofile.rest.client.RestClientBuilder;
+
+/**
+ * Configurer of the HTTP transport of the REST clients of a matrix client.
+ * <br>
+ * Unlike the {@link RestClientBuilderConfigurer}s found by the service loader, a profile is given to each client and can
+ * share its connections between all the REST clients of it.
+ */
+public interface TransportProfile extends RestClientBuilderConfigurer {
+
+    @Override
+    default void configure(RestClientBuilder builder) {
+        configure(builder, false);
+    }
+
+    /**
+     * Configure the builder.
+     * <br>
+     * Configurer modifies the argument.
+     *
+     * @param builder  builder.
+     * @param longPoll true for the REST clients of the long-polling requests (i.e. {@code /sync}).
+     */
+    void configure(RestClientBuilder builder, boolean longPoll);
+}
@@ -19,6 +19,7 @@ package io.github.ma1uta.matrix.impl.exception;
 import io.github.ma1uta.matrix.ExceptionResponse;
 
 import java.net.HttpURLConnection;
+import java.util.Optional;
 
 /**
  * Common matrix implementation exception.
@@ -62,4 +63,24 @@ public class MatrixException extends RuntimeException {
     public void setStatus(Integer status) {
         this.status = status;
     }
+
+    /**
+     * Find the matrix exception in the cause chain, the REST client can wrap the exceptions thrown by the filters.
+     *
+     * @param throwable The caught exception.
+     * @return The matrix exception if found.
+     */
+    public static Optional<MatrixException> find(Throwable throwable) {
+        Throwable current = throwable;
+        while (current != null) {
+            if (current instanceof MatrixException) {
+                return Optional.of((MatrixException) current);
+            }
+            if (current.getCause() == current) {
+                break;
+            }
+            current = current.getCause();
+        }
+        return Optional.empty();
+    }
 }
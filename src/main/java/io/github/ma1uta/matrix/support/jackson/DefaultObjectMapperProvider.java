@@ -27,21 +27,40 @@ import io.github.ma1uta.matrix.event.content.RoomMessageContent;
 import io.github.ma1uta.matrix.event.nested.ReceiptTs;
 import io.github.ma1uta.matrix.support.jackson.workaround.ReceiptTsDeserialized4898;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 /**
  * Default implementation.
  */
 public class DefaultObjectMapperProvider implements ObjectMapperProvider {
 
+    /**
+     * Option to decode the event content on the first access instead of during the parsing.
+     */
+    public static final String LAZY_EVENT_CONTENT = "jmsdk.jackson.event.content.lazy";
+
+    /**
+     * Option to skip the event types (comma separated list) during the parsing.
+     */
+    public static final String SKIPPED_EVENT_TYPES = "jmsdk.jackson.event.skipped";
+
     private final ObjectMapper mapper;
 
     public DefaultObjectMapperProvider() {
+        this(Boolean.parseBoolean(System.getProperty(LAZY_EVENT_CONTENT)), skippedEventTypes(System.getProperty(SKIPPED_EVENT_TYPES)));
+    }
+
+    public DefaultObjectMapperProvider(boolean lazyEventContent, Set<String> skippedEventTypes) {
         mapper = new ObjectMapper();
         mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
         mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
         mapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
 
         SimpleModule eventModule = new SimpleModule("Jackson Matrix Module");
-        eventModule.addDeserializer(Event.class, new EventDeserializer());
+        eventModule.addDeserializer(Event.class, new EventDeserializer(lazyEventContent, skippedEventTypes));
         eventModule.addDeserializer(RoomEncryptedContent.class, new RoomEncryptedContentDeserializer());
         eventModule.addDeserializer(RoomMessageContent.class, new RoomMessageContentDeserializer());
         eventModule.addDeserializer(ReceiptTs.class, new ReceiptTsDeserialized4898());
@@ -49,6 +68,13 @@ public class DefaultObjectMapperProvider implements ObjectMapperProvider {
         mapper.registerModule(eventModule);
     }
 
+    private static Set<String> skippedEventTypes(String types) {
+        if (types == null || types.trim().isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Arrays.stream(types.split(",")).map(String::trim).filter(type -> !type.isEmpty()).collect(Collectors.toSet());
+    }
+
     @Override
     public ObjectMapper get() {
         return mapper;
@@ -16,6 +16,8 @@
 
 package io.github.ma1uta.matrix.support.jackson;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.ma1uta.matrix.event.CallAnswer;
 import io.github.ma1uta.matrix.event.CallCandidates;
@@ -130,101 +132,126 @@ public class EventContentDeserializer {
      * @throws IOException when deserialization was failed.
      */
     public EventContent deserialize(byte[] content, String type, ObjectMapper mapper) throws IOException {
+        Class<? extends EventContent> contentClass = contentClass(type);
+        return contentClass != null ? mapper.readValue(content, contentClass) : parse(content, mapper);
+    }
+
+    /**
+     * Deserialize the event content from a parser positioned on the content object.
+     *
+     * @param parser the parser of the content.
+     * @param type   the type of the event.
+     * @param codec  the codec to bind the content.
+     * @return the deserialized event content or null
+     * @throws IOException when deserialization was failed.
+     */
+    public EventContent deserialize(JsonParser parser, String type, ObjectCodec codec) throws IOException {
+        Class<? extends EventContent> contentClass = contentClass(type);
+        return contentClass != null ? codec.readValue(parser, contentClass) : new RawEventContent(codec.readValue(parser, Map.class));
+    }
+
+    /**
+     * Find the content class of the event type.
+     *
+     * @param type the type of the event.
+     * @return the content class or null for the unknown events.
+     */
+    protected Class<? extends EventContent> contentClass(String type) {
         switch (type) {
             case CallAnswer.TYPE:
-                return mapper.readValue(content, CallAnswerContent.class);
+                return CallAnswerContent.class;
             case CallCandidates.TYPE:
-                return mapper.readValue(content, CallCandidatesContent.class);
+                return CallCandidatesContent.class;
             case CallHangup.TYPE:
-                return mapper.readValue(content, CallHangupContent.class);
+                return CallHangupContent.class;
             case CallInvite.TYPE:
-                return mapper.readValue(content, CallInviteContent.class);
+                return CallInviteContent.class;
             case Direct.TYPE:
-                return mapper.readValue(content, DirectContent.class);
+                return DirectContent.class;
             case Dummy.TYPE:
-                return mapper.readValue(content, DummyContent.class);
+                return DummyContent.class;
             case ForwardedRoomKey.TYPE:
-                return mapper.readValue(content, ForwardedRoomKeyContent.class);
+                return ForwardedRoomKeyContent.class;
             case FullyRead.TYPE:
-                return mapper.readValue(content, FullyReadContent.class);
+                return FullyReadContent.class;
             case IgnoredUserList.TYPE:
-                return mapper.readValue(content, IgnoredUserListContent.class);
+                return IgnoredUserListContent.class;
             case KeyVerificationAccept.TYPE:
-                return mapper.readValue(content, KeyVerificationAcceptContent.class);
+                return KeyVerificationAcceptContent.class;
             case KeyVerificationCancel.TYPE:
-                return mapper.readValue(content, KeyVerificationCancelContent.class);
+                return KeyVerificationCancelContent.class;
             case KeyVerificationKey.TYPE:
-                return mapper.readValue(content, KeyVerificationKeyContent.class);
+                return KeyVerificationKeyContent.class;
             case KeyVerificationMac.TYPE:
-                return mapper.readValue(content, KeyVerificationMacContent.class);
+                return KeyVerificationMacContent.class;
             case KeyVerificationRequest.TYPE:
-                return mapper.readValue(content, KeyVerificationRequestContent.class);
+                return KeyVerificationRequestContent.class;
             case KeyVerificationStart.TYPE:
-                return mapper.readValue(content, KeyVerificationStartContent.class);
+                return KeyVerificationStartContent.class;
             case Presence.TYPE:
-                return mapper.readValue(content, PresenceContent.class);
+                return PresenceContent.class;
             case PushRules.TYPE:
-                return mapper.readValue(content, PushRulesContent.class);
+                return PushRulesContent.class;
             case Receipt.TYPE:
-                return mapper.readValue(content, ReceiptContent.class);
+                return ReceiptContent.class;
             case RoomAliases.TYPE:
-                return mapper.readValue(content, RoomAliasesContent.class);
+                return RoomAliasesContent.class;
             case RoomAvatar.TYPE:
-                return mapper.readValue(content, RoomAvatarContent.class);
+                return RoomAvatarContent.class;
             case RoomCanonicalAlias.TYPE:
-                return mapper.readValue(content, RoomCanonicalAliasContent.class);
+                return RoomCanonicalAliasContent.class;
             case RoomCreate.TYPE:
-                return mapper.readValue(content, RoomCreateContent.class);
+                return RoomCreateContent.class;
             case RoomGuestAccess.TYPE:
-                return mapper.readValue(content, RoomGuestAccessContent.class);
+                return RoomGuestAccessContent.class;
             case RoomEncryption.TYPE:
-                return mapper.readValue(content, RoomEncryptionContent.class);
+                return RoomEncryptionContent.class;
             case RoomEncrypted.TYPE:
-                return mapper.readValue(content, RoomEncryptedContent.class);
+                return RoomEncryptedContent.class;
             case RoomHistoryVisibility.TYPE:
-                return mapper.readValue(content, RoomHistoryVisibilityContent.class);
+                return RoomHistoryVisibilityContent.class;
             case RoomJoinRules.TYPE:
-                return mapper.readValue(content, RoomJoinRulesContent.class);
+                return RoomJoinRulesContent.class;
             case RoomKey.TYPE:
-                return mapper.readValue(content, RoomKeyContent.class);
+                return RoomKeyContent.class;
             case RoomKeyRequest.TYPE:
-                return mapper.readValue(content, RoomKeyRequestContent.class);
+                return RoomKeyRequestContent.class;
             case RoomMember.TYPE:
-                return mapper.readValue(content, RoomMemberContent.class);
+                return RoomMemberContent.class;
             case RoomMessage.TYPE:
-                return mapper.readValue(content, RoomMessageContent.class);
+                return RoomMessageContent.class;
             case RoomMessageFeedback.TYPE:
-                return mapper.readValue(content, RoomMessageFeedbackContent.class);
+                return RoomMessageFeedbackContent.class;
             case RoomName.TYPE:
-                return mapper.readValue(content, RoomNameContent.class);
+                return RoomNameContent.class;
             case RoomPinned.TYPE:
-                return mapper.readValue(content, RoomPinnedContent.class);
+                return RoomPinnedContent.class;
             case RoomPowerLevels.TYPE:
-                return mapper.readValue(content, RoomPowerLevelsContent.class);
+                return RoomPowerLevelsContent.class;
             case RoomRedaction.TYPE:
-                return mapper.readValue(content, RoomRedactionContent.class);
+                return RoomRedactionContent.class;
             case RoomThirdPartyInvite.TYPE:
-                return mapper.readValue(content, RoomThirdPartyInviteContent.class);
+                return RoomThirdPartyInviteContent.class;
             case RoomTopic.TYPE:
-                return mapper.readValue(content, RoomTopicContent.class);
+                return RoomTopicContent.class;
             case Sticker.TYPE:
-                return mapper.readValue(content, StickerContent.class);
+                return StickerContent.class;
             case Tag.TYPE:
-                return mapper.readValue(content, TagContent.class);
+                return TagContent.class;
             case Typing.TYPE:
-                return mapper.readValue(content, TypingContent.class);
+                return TypingContent.class;
             case RoomTombstone.TYPE:
-                return mapper.readValue(content, TombstoneContent.class);
+                return TombstoneContent.class;
             case RoomServerAcl.TYPE:
-                return mapper.readValue(content, RoomServerAclContent.class);
+                return RoomServerAclContent.class;
             case PolicyRuleUser.TYPE:
-                return mapper.readValue(content, PolicyRuleUserContent.class);
+                return PolicyRuleUserContent.class;
             case PolicyRuleRoom.TYPE:
-                return mapper.readValue(content, PolicyRuleRoomContent.class);
+                return PolicyRuleRoomContent.class;
             case PolicyRuleServer.TYPE:
-                return mapper.readValue(content, PolicyRuleServerContent.class);
+                return PolicyRuleServerContent.class;
             default:
-                return parse(content, mapper);
+                return null;
         }
     }
 
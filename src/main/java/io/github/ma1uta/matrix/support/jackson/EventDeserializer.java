@@ -17,11 +17,11 @@
 package io.github.ma1uta.matrix.support.jackson;
 
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import io.github.ma1uta.matrix.event.CallAnswer;
 import io.github.ma1uta.matrix.event.CallCandidates;
 import io.github.ma1uta.matrix.event.CallHangup;
@@ -70,133 +70,291 @@ import io.github.ma1uta.matrix.event.RoomTopic;
 import io.github.ma1uta.matrix.event.Sticker;
 import io.github.ma1uta.matrix.event.Tag;
 import io.github.ma1uta.matrix.event.Typing;
+import io.github.ma1uta.matrix.event.content.EventContent;
+import io.github.ma1uta.matrix.event.content.RawEventContent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Event deserializer.
+ * <p/>
+ * Two opt-in modes cut the cost of the events the client never looks at. With the lazy content the event content is kept as a
+ * token buffer and bound on the first {@link Event#getContent()} call. The skipped event types are not bound at all: the parser
+ * skips over them and a bare {@link RawEvent} with the type only takes their place.
  */
 public class EventDeserializer extends JsonDeserializer<Event> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EventDeserializer.class);
 
+    private static final String TYPE_FIELD = "type";
+
+    private static final String CONTENT_FIELD = "content";
+
+    private final boolean lazyContent;
+
+    private final Set<String> skippedTypes;
+
+    private final EventContentDeserializer contentDeserializer = new EventContentDeserializer();
+
+    public EventDeserializer() {
+        this(false, Collections.emptySet());
+    }
+
+    public EventDeserializer(boolean lazyContent, Set<String> skippedTypes) {
+        this.lazyContent = lazyContent;
+        this.skippedTypes = Collections.unmodifiableSet(new HashSet<>(skippedTypes));
+    }
+
+    public boolean isLazyContent() {
+        return lazyContent;
+    }
+
+    public Set<String> getSkippedTypes() {
+        return skippedTypes;
+    }
+
     @Override
     public Event deserialize(JsonParser parser, DeserializationContext ctxt) throws IOException {
         ObjectCodec codec = parser.getCodec();
-        JsonNode node = codec.readTree(parser);
+        TokenBuffer buffer = new TokenBuffer(parser, ctxt);
+        TokenBuffer content = lazyContent ? new TokenBuffer(parser, ctxt) : null;
+        String type = readType(parser, buffer, content);
+
+        if (type == null) {
+            return parse(buffer, content, codec, ctxt, null);
+        }
+
+        if (skippedTypes.contains(type)) {
+            return new RawEvent(null, type);
+        }
 
-        JsonNode type = node.get("type");
-        if (type == null || !type.isTextual()) {
-            return parse(node, codec, ctxt, null);
+        Class<? extends Event> eventClass = eventClass(type);
+        if (eventClass == null) {
+            return parse(buffer, content, codec, ctxt, type);
         }
 
         try {
-            switch (type.asText()) {
-                case CallAnswer.TYPE:
-                    return codec.treeToValue(node, CallAnswer.class);
-                case CallCandidates.TYPE:
-                    return codec.treeToValue(node, CallCandidates.class);
-                case CallHangup.TYPE:
-                    return codec.treeToValue(node, CallHangup.class);
-                case CallInvite.TYPE:
-                    return codec.treeToValue(node, CallInvite.class);
-                case Direct.TYPE:
-                    return codec.treeToValue(node, Direct.class);
-                case ForwardedRoomKey.TYPE:
-                    return codec.treeToValue(node, ForwardedRoomKey.class);
-                case FullyRead.TYPE:
-                    return codec.treeToValue(node, FullyRead.class);
-                case IgnoredUserList.TYPE:
-                    return codec.treeToValue(node, IgnoredUserList.class);
-                case Presence.TYPE:
-                    return codec.treeToValue(node, Presence.class);
-                case Receipt.TYPE:
-                    return codec.treeToValue(node, Receipt.class);
-                case RoomAliases.TYPE:
-                    return codec.treeToValue(node, RoomAliases.class);
-                case RoomAvatar.TYPE:
-                    return codec.treeToValue(node, RoomAvatar.class);
-                case RoomCanonicalAlias.TYPE:
-                    return codec.treeToValue(node, RoomCanonicalAlias.class);
-                case RoomCreate.TYPE:
-                    return codec.treeToValue(node, RoomCreate.class);
-                case RoomGuestAccess.TYPE:
-                    return codec.treeToValue(node, RoomGuestAccess.class);
-                case RoomEncryption.TYPE:
-                    return codec.treeToValue(node, RoomEncryption.class);
-                case RoomEncrypted.TYPE:
-                    return codec.treeToValue(node, RoomEncrypted.class);
-                case RoomHistoryVisibility.TYPE:
-                    return codec.treeToValue(node, RoomHistoryVisibility.class);
-                case RoomJoinRules.TYPE:
-                    return codec.treeToValue(node, RoomJoinRules.class);
-                case RoomKey.TYPE:
-                    return codec.treeToValue(node, RoomKey.class);
-                case RoomKeyRequest.TYPE:
-                    return codec.treeToValue(node, RoomKeyRequest.class);
-                case RoomMember.TYPE:
-                    return codec.treeToValue(node, RoomMember.class);
-                case RoomMessage.TYPE:
-                    return codec.treeToValue(node, RoomMessage.class);
-                case RoomMessageFeedback.TYPE:
-                    return codec.treeToValue(node, RoomMessageFeedback.class);
-                case RoomName.TYPE:
-                    return codec.treeToValue(node, RoomName.class);
-                case RoomPinned.TYPE:
-                    return codec.treeToValue(node, RoomPinned.class);
-                case RoomPowerLevels.TYPE:
-                    return codec.treeToValue(node, RoomPowerLevels.class);
-                case RoomRedaction.TYPE:
-                    return codec.treeToValue(node, RoomRedaction.class);
-                case RoomThirdPartyInvite.TYPE:
-                    return codec.treeToValue(node, RoomThirdPartyInvite.class);
-                case RoomTopic.TYPE:
-                    return codec.treeToValue(node, RoomTopic.class);
-                case Sticker.TYPE:
-                    return codec.treeToValue(node, Sticker.class);
-                case Tag.TYPE:
-                    return codec.treeToValue(node, Tag.class);
-                case Typing.TYPE:
-                    return codec.treeToValue(node, Typing.class);
-                case RoomServerAcl.TYPE:
-                    return codec.treeToValue(node, RoomServerAcl.class);
-                case PushRules.TYPE:
-                    return codec.treeToValue(node, PushRules.class);
-                case RoomTombstone.TYPE:
-                    return codec.treeToValue(node, RoomTombstone.class);
-                case Dummy.TYPE:
-                    return codec.treeToValue(node, Dummy.class);
-                case KeyVerificationAccept.TYPE:
-                    return codec.treeToValue(node, KeyVerificationAccept.class);
-                case KeyVerificationCancel.TYPE:
-                    return codec.treeToValue(node, KeyVerificationCancel.class);
-                case KeyVerificationKey.TYPE:
-                    return codec.treeToValue(node, KeyVerificationKey.class);
-                case KeyVerificationMac.TYPE:
-                    return codec.treeToValue(node, KeyVerificationMac.class);
-                case KeyVerificationRequest.TYPE:
-                    return codec.treeToValue(node, KeyVerificationRequest.class);
-                case KeyVerificationStart.TYPE:
-                    return codec.treeToValue(node, KeyVerificationStart.class);
-                case PolicyRuleRoom.TYPE:
-                    return codec.treeToValue(node, PolicyRuleRoom.class);
-                case PolicyRuleUser.TYPE:
-                    return codec.treeToValue(node, PolicyRuleUser.class);
-                case PolicyRuleServer.TYPE:
-                    return codec.treeToValue(node, PolicyRuleServer.class);
-                default:
-                    return parse(node, codec, ctxt, type.asText());
-            }
+            return bind(buffer, content, codec, eventClass, type);
         } catch (IOException e) {
             LOGGER.error("Unable to parse event", e);
-            return parse(node, codec, ctxt, type.asText());
+            return parse(buffer, content, codec, ctxt, type);
         }
     }
 
-    protected Event parse(JsonNode jsonNode, ObjectCodec codec, DeserializationContext ctxt, String type) throws JsonProcessingException {
-        return new RawEvent(codec.treeToValue(jsonNode, Map.class), type);
+    /**
+     * Find the event class of the event type.
+     *
+     * @param type the type of the event.
+     * @return the event class or null for the unknown events.
+     */
+    protected Class<? extends Event> eventClass(String type) {
+        switch (type) {
+            case CallAnswer.TYPE:
+                return CallAnswer.class;
+            case CallCandidates.TYPE:
+                return CallCandidates.class;
+            case CallHangup.TYPE:
+                return CallHangup.class;
+            case CallInvite.TYPE:
+                return CallInvite.class;
+            case Direct.TYPE:
+                return Direct.class;
+            case ForwardedRoomKey.TYPE:
+                return ForwardedRoomKey.class;
+            case FullyRead.TYPE:
+                return FullyRead.class;
+            case IgnoredUserList.TYPE:
+                return IgnoredUserList.class;
+            case Presence.TYPE:
+                return Presence.class;
+            case Receipt.TYPE:
+                return Receipt.class;
+            case RoomAliases.TYPE:
+                return RoomAliases.class;
+            case RoomAvatar.TYPE:
+                return RoomAvatar.class;
+            case RoomCanonicalAlias.TYPE:
+                return RoomCanonicalAlias.class;
+            case RoomCreate.TYPE:
+                return RoomCreate.class;
+            case RoomGuestAccess.TYPE:
+                return RoomGuestAccess.class;
+            case RoomEncryption.TYPE:
+                return RoomEncryption.class;
+            case RoomEncrypted.TYPE:
+                return RoomEncrypted.class;
+            case RoomHistoryVisibility.TYPE:
+                return RoomHistoryVisibility.class;
+            case RoomJoinRules.TYPE:
+                return RoomJoinRules.class;
+            case RoomKey.TYPE:
+                return RoomKey.class;
+            case RoomKeyRequest.TYPE:
+                return RoomKeyRequest.class;
+            case RoomMember.TYPE:
+                return RoomMember.class;
+            case RoomMessage.TYPE:
+                return RoomMessage.class;
+            case RoomMessageFeedback.TYPE:
+                return RoomMessageFeedback.class;
+            case RoomName.TYPE:
+                return RoomName.class;
+            case RoomPinned.TYPE:
+                return RoomPinned.class;
+            case RoomPowerLevels.TYPE:
+                return RoomPowerLevels.class;
+            case RoomRedaction.TYPE:
+                return RoomRedaction.class;
+            case RoomThirdPartyInvite.TYPE:
+                return RoomThirdPartyInvite.class;
+            case RoomTopic.TYPE:
+                return RoomTopic.class;
+            case Sticker.TYPE:
+                return Sticker.class;
+            case Tag.TYPE:
+                return Tag.class;
+            case Typing.TYPE:
+                return Typing.class;
+            case RoomServerAcl.TYPE:
+                return RoomServerAcl.class;
+            case PushRules.TYPE:
+                return PushRules.class;
+            case RoomTombstone.TYPE:
+                return RoomTombstone.class;
+            case Dummy.TYPE:
+                return Dummy.class;
+            case KeyVerificationAccept.TYPE:
+                return KeyVerificationAccept.class;
+            case KeyVerificationCancel.TYPE:
+                return KeyVerificationCancel.class;
+            case KeyVerificationKey.TYPE:
+                return KeyVerificationKey.class;
+            case KeyVerificationMac.TYPE:
+                return KeyVerificationMac.class;
+            case KeyVerificationRequest.TYPE:
+                return KeyVerificationRequest.class;
+            case KeyVerificationStart.TYPE:
+                return KeyVerificationStart.class;
+            case PolicyRuleRoom.TYPE:
+                return PolicyRuleRoom.class;
+            case PolicyRuleUser.TYPE:
+                return PolicyRuleUser.class;
+            case PolicyRuleServer.TYPE:
+                return PolicyRuleServer.class;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Copy the current event into the token buffer and pick up the event type on the way.
+     * <p/>
+     * The event is read from the source exactly once. The buffer keeps the raw tokens (no tree nodes), so the typed binding
+     * and the {@link RawEvent} fallback both replay it without a second parse of the payload. Once the type is known to be
+     * skipped the remaining fields are skipped without being copied.
+     *
+     * @param parser  the source parser positioned on the event object.
+     * @param buffer  the buffer receiving the event tokens.
+     * @param content the buffer receiving the content tokens in the lazy mode, null to keep the content in the event buffer.
+     * @return the event type or {@code null} if the event has no textual type.
+     * @throws IOException when unable to read the event.
+     */
+    protected String readType(JsonParser parser, TokenBuffer buffer, TokenBuffer content) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        } else if (token != JsonToken.FIELD_NAME) {
+            buffer.copyCurrentStructure(parser);
+            return null;
+        }
+
+        String type = null;
+        boolean skipped = false;
+        buffer.writeStartObject();
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if (skipped) {
+                parser.skipChildren();
+                continue;
+            }
+            if (type == null && TYPE_FIELD.equals(fieldName) && valueToken == JsonToken.VALUE_STRING) {
+                type = parser.getText();
+                skipped = skippedTypes.contains(type);
+            }
+            if (content != null && CONTENT_FIELD.equals(fieldName)) {
+                content.copyCurrentStructure(parser);
+            } else {
+                buffer.writeFieldName(fieldName);
+                buffer.copyCurrentStructure(parser);
+            }
+        }
+        buffer.writeEndObject();
+        return type;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Event bind(TokenBuffer buffer, TokenBuffer content, ObjectCodec codec, Class<? extends Event> eventClass, String type)
+        throws IOException {
+        Event event;
+        try (JsonParser eventParser = buffer.asParser(codec)) {
+            eventParser.nextToken();
+            event = codec.readValue(eventParser, eventClass);
+        }
+        if (content != null && content.firstToken() != null) {
+            event.setLazyContent(() -> loadContent(content, codec, type));
+        }
+        return event;
+    }
+
+    /**
+     * Bind the lazy content of an event.
+     * <p/>
+     * As in the eager mode, a content that can't be bound to its class falls back to the raw properties, here a
+     * {@link RawEventContent} instead of a {@link RawEvent} since the event itself is already bound.
+     *
+     * @param content the content tokens.
+     * @param codec   the codec.
+     * @param type    the event type.
+     * @return the content, or {@code null} if the content is not even a JSON object.
+     */
+    protected EventContent loadContent(TokenBuffer content, ObjectCodec codec, String type) {
+        try (JsonParser contentParser = content.asParser(codec)) {
+            contentParser.nextToken();
+            return contentDeserializer.deserialize(contentParser, type, codec);
+        } catch (IOException e) {
+            LOGGER.error("Unable to parse event content", e);
+        }
+
+        try (JsonParser contentParser = content.asParser(codec)) {
+            contentParser.nextToken();
+            return new RawEventContent(codec.readValue(contentParser, Map.class));
+        } catch (IOException e) {
+            LOGGER.error("Unable to read event content", e);
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Event parse(TokenBuffer buffer, TokenBuffer content, ObjectCodec codec, DeserializationContext ctxt, String type)
+        throws IOException {
+        Map properties;
+        try (JsonParser eventParser = buffer.asParser(codec)) {
+            eventParser.nextToken();
+            properties = codec.readValue(eventParser, Map.class);
+        }
+        if (content != null && content.firstToken() != null && properties != null) {
+            try (JsonParser contentParser = content.asParser(codec)) {
+                contentParser.nextToken();
+                properties.put(CONTENT_FIELD, codec.readValue(contentParser, Map.class));
+            }
+        }
+        return new RawEvent(properties, type);
     }
 }
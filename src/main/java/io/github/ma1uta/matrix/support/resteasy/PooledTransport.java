@@ -0,0 +1,298 @@
+/*
+ * Copyright Anatoliy Sablin tolya@sablin.xyz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.ma1uta.matrix.support.resteasy;
+
+import io.github.ma1uta.matrix.impl.TransportProfile;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.eclipse.microprofile.rest.client.RestClientBuilder;
+import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient43Engine;
+import org.jboss.resteasy.plugins.interceptors.GZIPEncodingInterceptor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.HttpHeaders;
+
+/**
+ * Pooled HTTP transport for the RESTEasy REST clients.
+ * <br>
+ * All the REST clients of a matrix client send through the same pool of kept-alive connections, so a burst of requests
+ * doesn't open (and handshake) a connection per API. The long-polling requests get their own read timeout. The responses
+ * are asked and decoded gzipped, the requests are only gzipped on demand as few homeservers accept them.
+ * <br>
+ * The connections are verified with the default hostname verifier. A matrix client whose homeserver resolution gives its own
+ * hostname verifier doesn't use the transport, its REST clients keep their own connections.
+ */
+public class PooledTransport implements TransportProfile, Closeable {
+
+    /**
+     * Default maximum of connections.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 32;
+
+    /**
+     * Default maximum of connections to the same host.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 16;
+
+    /**
+     * Default connect timeout (milliseconds).
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10_000;
+
+    /**
+     * Default read timeout (milliseconds).
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 30_000;
+
+    /**
+     * Default read timeout of the long-polling requests (milliseconds), above the timeout of the requests themselves.
+     */
+    public static final int DEFAULT_LONG_POLL_READ_TIMEOUT = 90_000;
+
+    /**
+     * Default time to wait for a free connection of the pool (milliseconds).
+     */
+    public static final int DEFAULT_POOL_TIMEOUT = 30_000;
+
+    /**
+     * Default idle time before closing a connection (milliseconds).
+     */
+    public static final long DEFAULT_MAX_IDLE_TIME = 60_000L;
+
+    private static final int GZIP_ENCODING_PRIORITY = 100;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpClient httpClient;
+
+    private final CloseableHttpClient longPollHttpClient;
+
+    private final ClientHttpEngine engine;
+
+    private final ClientHttpEngine longPollEngine;
+
+    private final boolean gzipRequests;
+
+    protected PooledTransport(Builder builder) {
+        this.connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https", SSLConnectionSocketFactory.getSocketFactory())
+            .build());
+        this.connectionManager.setMaxTotal(builder.maxConnections);
+        this.connectionManager.setDefaultMaxPerRoute(builder.maxConnectionsPerRoute);
+
+        // both clients share the pool, the first one closes the idle connections
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setConnectionManagerShared(true)
+            .setDefaultRequestConfig(requestConfig(builder, builder.readTimeout))
+            .evictExpiredConnections()
+            .evictIdleConnections(builder.maxIdleTime, TimeUnit.MILLISECONDS)
+            .build();
+        this.longPollHttpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setConnectionManagerShared(true)
+            .setDefaultRequestConfig(requestConfig(builder, builder.longPollReadTimeout))
+            .build();
+        this.engine = new ApacheHttpClient43Engine(httpClient, false);
+        this.longPollEngine = new ApacheHttpClient43Engine(longPollHttpClient, false);
+        this.gzipRequests = builder.gzipRequests;
+    }
+
+    private static RequestConfig requestConfig(Builder builder, int readTimeout) {
+        return RequestConfig.custom()
+            .setConnectTimeout(builder.connectTimeout)
+            .setConnectionRequestTimeout(builder.poolTimeout)
+            .setSocketTimeout(readTimeout)
+            .setContentCompressionEnabled(true)
+            .build();
+    }
+
+    /**
+     * Create a new transport builder.
+     *
+     * @return the transport builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void configure(RestClientBuilder builder, boolean longPoll) {
+        builder.property("resteasy.httpEngine", longPoll ? longPollEngine : engine);
+        if (gzipRequests) {
+            builder.register((ClientRequestFilter) requestContext -> {
+                if (requestContext.hasEntity()) {
+                    requestContext.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+                }
+            });
+            builder.register(new GZIPEncodingInterceptor(), GZIP_ENCODING_PRIORITY);
+        }
+    }
+
+    /**
+     * Provides the statistics of the connection pool.
+     *
+     * @return the leased, pending and available connections with the maximum of them.
+     */
+    public PoolStats getStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            httpClient.close();
+            longPollHttpClient.close();
+        } finally {
+            connectionManager.shutdown();
+        }
+    }
+
+    /**
+     * Pooled transport builder.
+     */
+    public static class Builder {
+
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+        private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+        private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+        private int readTimeout = DEFAULT_READ_TIMEOUT;
+
+        private int longPollReadTimeout = DEFAULT_LONG_POLL_READ_TIMEOUT;
+
+        private int poolTimeout = DEFAULT_POOL_TIMEOUT;
+
+        private long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+
+        private boolean gzipRequests = false;
+
+        protected Builder() {
+        }
+
+        /**
+         * Specify the maximum of connections.
+         *
+         * @param maxConnections the maximum of connections.
+         * @return This builder.
+         */
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * Specify the maximum of connections to the same host.
+         *
+         * @param maxConnectionsPerRoute the maximum of connections to the same host.
+         * @return This builder.
+         */
+        public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * Specify the connect timeout.
+         *
+         * @param connectTimeout the connect timeout (milliseconds).
+         * @return This builder.
+         */
+        public Builder connectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Specify the read timeout.
+         *
+         * @param readTimeout the read timeout (milliseconds).
+         * @return This builder.
+         */
+        public Builder readTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * Specify the read timeout of the long-polling requests.
+         *
+         * @param longPollReadTimeout the read timeout (milliseconds), must be above the timeout of the requests.
+         * @return This builder.
+         */
+        public Builder longPollReadTimeout(int longPollReadTimeout) {
+            this.longPollReadTimeout = longPollReadTimeout;
+            return this;
+        }
+
+        /**
+         * Specify the time to wait for a free connection of the pool.
+         *
+         * @param poolTimeout the time to wait (milliseconds).
+         * @return This builder.
+         */
+        public Builder poolTimeout(int poolTimeout) {
+            this.poolTimeout = poolTimeout;
+            return this;
+        }
+
+        /**
+         * Specify the idle time before closing a connection.
+         *
+         * @param maxIdleTime the idle time (milliseconds).
+         * @return This builder.
+         */
+        public Builder maxIdleTime(long maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+            return this;
+        }
+
+        /**
+         * Gzip the request bodies.
+         *
+         * @param gzipRequests true to gzip the request bodies.
+         * @return This builder.
+         */
+        public Builder gzipRequests(boolean gzipRequests) {
+            this.gzipRequests = gzipRequests;
+            return this;
+        }
+
+        /**
+         * Build a new transport.
+         *
+         * @return the transport.
+         */
+        public PooledTransport build() {
+            return new PooledTransport(this);
+        }
+    }
+}
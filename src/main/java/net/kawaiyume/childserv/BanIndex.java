@@ -0,0 +1,187 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  BanIndex.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cross room ban index : for each banned user, the set of rooms the user is banned from, as a bitset of room indexes.
+ * <p>
+ * A room gets an index the first time a ban is recorded or looked for in it and keeps it, the lookups of a single room never
+ * give it an index. A user is removed once no more banned anywhere.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class BanIndex
+{
+    private final Map<String, Integer> roomIndexes = new HashMap<>();
+    private final List<String> rooms = new ArrayList<>();
+
+    private final Map<String, BitSet> bannedIn = new HashMap<>();
+    private final Map<String, String> reasons = new HashMap<>();
+
+    public synchronized BitSet roomsOf(final Collection<String> roomIds)
+    {
+        final BitSet set = new BitSet();
+        roomIds.forEach(roomId -> set.set(indexOf(roomId)));
+        return set;
+    }
+
+    public synchronized void banned(final String roomId, final String userId, final String reason)
+    {
+        bannedIn.computeIfAbsent(userId, k -> new BitSet()).set(indexOf(roomId));
+        if ((reason != null && !reason.isEmpty()) || !reasons.containsKey(userId))
+        {
+            reasons.put(userId, reason == null ? "" : reason);
+        }
+    }
+
+    public synchronized void unbanned(final String roomId, final String userId)
+    {
+        final BitSet set = bannedIn.get(userId);
+        final Integer index = roomIndexes.get(roomId);
+        if (set != null && index != null)
+        {
+            set.clear(index);
+            if (set.isEmpty())
+            {
+                bannedIn.remove(userId);
+                reasons.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * Replace the bans of a room, after a (re)load of its members.
+     */
+    public synchronized void replaceRoom(final String roomId, final Map<String, String> bans)
+    {
+        forgetRoom(roomId);
+        bans.forEach((userId, reason) -> banned(roomId, userId, reason));
+    }
+
+    public synchronized void forgetRoom(final String roomId)
+    {
+        final Integer index = roomIndexes.get(roomId);
+        if (index == null)
+        {
+            return;
+        }
+
+        final Iterator<Map.Entry<String, BitSet>> it = bannedIn.entrySet().iterator();
+        while (it.hasNext())
+        {
+            final Map.Entry<String, BitSet> entry = it.next();
+            entry.getValue().clear(index);
+            if (entry.getValue().isEmpty())
+            {
+                reasons.remove(entry.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized boolean isBanned(final String roomId, final String userId)
+    {
+        final BitSet set = bannedIn.get(userId);
+        final Integer index = roomIndexes.get(roomId);
+        return set != null && index != null && set.get(index);
+    }
+
+    /**
+     * The rooms among the targets where a user is not banned yet.
+     */
+    public synchronized List<String> missingRooms(final String userId, final BitSet targets)
+    {
+        final BitSet missing = (BitSet) targets.clone();
+        final BitSet set = bannedIn.get(userId);
+        if (set != null)
+        {
+            missing.andNot(set);
+        }
+        return roomsAt(missing);
+    }
+
+    /**
+     * For each target room, the users banned from at least one source room but not from the target room, with their ban reason.
+     */
+    public synchronized Map<String, Map<String, String>> missingBans(final BitSet sources, final BitSet targets)
+    {
+        final Map<String, Map<String, String>> missing = new LinkedHashMap<>();
+        bannedIn.forEach((userId, set) ->
+        {
+            if (set.intersects(sources))
+            {
+                final BitSet rooms = (BitSet) targets.clone();
+                rooms.andNot(set);
+                roomsAt(rooms).forEach(roomId -> missing.computeIfAbsent(roomId, k -> new LinkedHashMap<>()).put(userId, reasons.get(userId)));
+            }
+        });
+        return missing;
+    }
+
+    public synchronized int getBannedUsersCount()
+    {
+        return bannedIn.size();
+    }
+
+    private int indexOf(final String roomId)
+    {
+        return roomIndexes.computeIfAbsent(roomId, k ->
+        {
+            rooms.add(k);
+            return rooms.size() - 1;
+        });
+    }
+
+    private List<String> roomsAt(final BitSet set)
+    {
+        final List<String> result = new ArrayList<>(set.cardinality());
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1))
+        {
+            result.add(rooms.get(i));
+        }
+        return result;
+    }
+}
@@ -40,7 +40,7 @@ import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import io.github.ma1uta.matrix.client.StandaloneClient;
 import io.github.ma1uta.matrix.client.model.auth.LoginResponse;
-import io.github.ma1uta.matrix.client.model.event.JoinedMembersResponse;
+import io.github.ma1uta.matrix.client.model.filter.FilterResponse;
 import io.github.ma1uta.matrix.client.model.receipt.ReadMarkersRequest;
 import io.github.ma1uta.matrix.client.model.room.CreateRoomRequest;
 import io.github.ma1uta.matrix.client.model.room.RoomId;
@@ -55,11 +55,13 @@ import io.github.ma1uta.matrix.client.model.sync.Presence;
 import io.github.ma1uta.matrix.client.model.sync.Rooms;
 import io.github.ma1uta.matrix.client.model.sync.SyncResponse;
 import io.github.ma1uta.matrix.client.model.sync.Timeline;
-import io.github.ma1uta.matrix.client.sync.SyncLoop;
+import io.github.ma1uta.matrix.client.scheduler.RequestScheduler;
+import io.github.ma1uta.matrix.client.sync.PipelinedSyncLoop;
 import io.github.ma1uta.matrix.client.sync.SyncParams;
 import io.github.ma1uta.matrix.event.Event;
 import io.github.ma1uta.matrix.event.RoomEncrypted;
 import io.github.ma1uta.matrix.event.RoomEvent;
+import io.github.ma1uta.matrix.event.RoomMember;
 import io.github.ma1uta.matrix.event.RoomMessage;
 import io.github.ma1uta.matrix.event.StateEvent;
 import io.github.ma1uta.matrix.event.content.EventContent;
@@ -68,9 +70,11 @@ import io.github.ma1uta.matrix.event.content.RoomMemberContent;
 import io.github.ma1uta.matrix.event.content.RoomMessageContent;
 import io.github.ma1uta.matrix.event.message.Text;
 import io.github.ma1uta.matrix.impl.exception.MatrixException;
+import io.github.ma1uta.matrix.support.resteasy.PooledTransport;
 import net.kawaiyume.childserv.brigadier.commands.CommandAdmin;
 import net.kawaiyume.childserv.brigadier.commands.CommandAuthentication;
 import net.kawaiyume.childserv.brigadier.commands.CommandBanUnban;
+import net.kawaiyume.childserv.brigadier.commands.CommandCancel;
 import net.kawaiyume.childserv.brigadier.commands.CommandHelp;
 import net.kawaiyume.childserv.brigadier.commands.CommandLife;
 import net.kawaiyume.childserv.brigadier.commands.CommandRoom;
@@ -78,22 +82,28 @@ import net.kawaiyume.childserv.brigadier.commands.CommandSay;
 import net.kawaiyume.childserv.brigadier.commands.CommandVariable;
 import net.kawaiyume.childserv.brigadier.commands.CommandVersion;
 import net.kawaiyume.childserv.brigadier.helpers.SourceContext;
+import org.apache.http.pool.PoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -108,24 +118,79 @@ public class ChildServ
     private static final boolean DEBUG_SYNC_THREAD = false;
     private static final boolean BAN_UNBAN_DRY_RUN = false;
 
+    // count of fetched sync batches that can wait for the processing
+    private static final int SYNC_QUEUE_CAPACITY = 8;
+
+    // do not join again at once after having been kicked
+    private static final long COME_BACK_DELAY_SECONDS = 5;
+
+    // the changes made during this window upload a single sync filter
+    private static final long SYNC_FILTER_REFRESH_DELAY_SECONDS = 5;
+
+    // room tasks waiting on a lane before the sync processing waits for the lane
+    private static final int ROOM_LANE_CAPACITY = 256;
+
+    // count of rooms joined or left at the same time at startup
+    private static final int RECONCILE_PARALLELISM = 4;
+
+    // threads running the asynchronous homeserver requests, and their backlog before new requests are refused
+    private static final int MATRIX_THREADS = 8;
+    private static final int MATRIX_QUEUE_CAPACITY = 1024;
+
+    // kept-alive connections to the homeserver, shared by all the requests
+    private static final int MATRIX_CONNECTIONS = 16;
+
+    // messages posted in a room during this window are sent as one
+    private static final long OUTBOUND_MERGE_WINDOW_MILLIS = 500;
+
+    // count of admin rooms running a command at the same time
+    private static final int COMMAND_WORKERS = 2;
+
+    // commands only acting on the command lane, run at once instead of waiting behind the command they act on
+    private static final Set<String> INLINE_COMMANDS = Collections.singleton("cancel");
+
     private final Config botConfig;
 
     private final ExecutorService syncLoopExecutorService = Executors.newFixedThreadPool(2);
 
     private final ScheduledExecutorService backgroundTasksExecutorService = new ScheduledThreadPoolExecutor(2);
 
+    // shared by all the asynchronous requests, each request in flight holds one of its threads while waiting for the homeserver
+    private final ExecutorService matrixExecutorService = newMatrixExecutorService();
+
+    private final PooledTransport transport = PooledTransport.builder().maxConnectionsPerRoute(MATRIX_CONNECTIONS).build();
+
+    private final RoomLaneDispatcher roomLanes;
+
+    private final EventRouter eventRouter = new EventRouter();
+
+    private final CommandLane commandLane;
+
+    private final ReceiptCoalescer receipts;
+
+    private final OutboundMessageQueue outbound;
+
+    // completed when the last checkpointed batch have been fully processed
+    private CompletableFuture<Void> lastCheckpoint = CompletableFuture.completedFuture(null);
+
     private final CommandDispatcher<SourceContext> dispatcher = new CommandDispatcher<>();
 
+    private final RequestScheduler requestScheduler;
+
     private final StandaloneClient mxClient;
 
+    private PipelinedSyncLoop syncLoop;
+
+    // a refresh of the sync filter is scheduled and not started yet
+    private final AtomicBoolean syncFilterRefreshPending = new AtomicBoolean();
+
     private String selfMemberId;
 
-    private long readyTs = -1;
+    private volatile long readyTs = -1;
 
     private final Map<String, WelcomeRoom> welcomeRooms = new ConcurrentHashMap<>();
 
-    private final Map<String, Set<String>> roomsUsers = new ConcurrentHashMap<>();
-    private final Map<String, Map<String, String>> roomsBanned = new ConcurrentHashMap<>();
+    private final RoomMemberStore memberStore;
 
     public ChildServ(final boolean debug)
     {
@@ -133,7 +198,25 @@ public class ChildServ
 
         botConfig = new Config();
 
-        mxClient = new StandaloneClient.Builder().domain(botConfig.getHost()).build();
+        // commands and checkpoints change the config often, write it from the background and on the way out
+        botConfig.enableWriteBehind(botConfig.getSaveDelay());
+        Runtime.getRuntime().addShutdownHook(new Thread(botConfig::flush, "ConfigFlush"));
+
+        roomLanes = new RoomLaneDispatcher(botConfig.getRoomLanes(), ROOM_LANE_CAPACITY);
+        commandLane = new CommandLane(COMMAND_WORKERS, TimeUnit.SECONDS.toMillis(botConfig.getCommandTimeout()), this::post);
+
+        // leaves, joins and bans are paced by the homeserver rate limits instead of fixed pauses
+        requestScheduler = new RequestScheduler(botConfig.getOutboundConcurrency(), RequestScheduler.DEFAULT_MAX_RETRIES);
+        mxClient = new StandaloneClient.Builder().requestScheduler(requestScheduler).executorService(matrixExecutorService).transport(transport).domain(botConfig.getHost()).build();
+
+        memberStore = new RoomMemberStore(mxClient);
+
+        // the fully read marker and the read receipt are set by the same request
+        receipts = new ReceiptCoalescer((roomId, request) -> mxClient.receiptAsync().readMarkers(roomId, request));
+
+        outbound = new OutboundMessageQueue((roomId, text, formattedText) -> mxClient.eventAsync().sendFormattedMessage(roomId, text, formattedText),
+            (roomId, messages, error) -> LOGGER.error("{} :: unable to post {} messages, first was '{}' : {}", roomId, messages.size(), messages.get(0), error.toString()),
+            OUTBOUND_MERGE_WINDOW_MILLIS);
 
         // register commands
         CommandVersion.register(dispatcher);
@@ -145,6 +228,9 @@ public class ChildServ
         CommandSay.register(dispatcher);
         CommandAuthentication.register(dispatcher);
         CommandLife.register(dispatcher);
+        CommandCancel.register(dispatcher);
+
+        registerEventHandlers();
 
         try
         {
@@ -192,118 +278,76 @@ public class ChildServ
         }
     }
 
+    /**
+     * Queue a plain message and return at once, see {@link #post(String, String, boolean)}.
+     */
     public void post(final String roomId, final String message)
     {
         post(roomId, message, false);
     }
 
-    @SuppressWarnings("rawtypes")
     public void joinRoom(final String roomId)
     {
-        LOGGER.info("{} :: joining room", roomId);
-        iJoinRoom(roomId);
-
-        LOGGER.info("{} :: loading users for room", roomId);
-        final JoinedMembersResponse joinedMembers = mxClient.event().joinedMembers(roomId);
-        LOGGER.info("{} :: found {} users", roomId, joinedMembers.getJoined().size());
-        roomsUsers.put(roomId, new HashSet<>(joinedMembers.getJoined().keySet()));
-
-        LOGGER.info("{} :: loading banned users", roomId);
-        final List<Event> events = mxClient.event().members(roomId).getChunk();
-        final List<Event> banned = events.stream().filter(e -> ((RoomMemberContent) e.getContent()).getMembership().equals("ban")).collect(Collectors.toList());
-
-        /*System.err.println("----- Status for room " + roomId);
-        joinedMembers.getJoined().keySet().forEach(k ->
-        {
-            try
-            {
-                final PresenceStatus s = mxClient.presence().getPresenceStatus(k);
-                if (s != null)
-                {
-                    if (s.getCurrentlyActive() == null)
-                    {
-                        System.err.println(k + " - N/A - " + s.getLastActiveAgo());
-                    }
-                    else
-                    {
-                        System.err.println(k + " - " + (s.getCurrentlyActive() ? "active" : "inactive") + " - " + s.getLastActiveAgo());
-                    }
-                }
-                else
-                {
-                    System.err.println(k + " - no presence infos");
-                }
-            }
-            catch(final Exception e)
-            {
-                System.err.println(k + " - exception");
-            }
-        });*/
+        await(joinRoomAsync(roomId));
+    }
 
-        roomsBanned.put(roomId, new ConcurrentHashMap<>());
+    public CompletableFuture<Void> joinRoomAsync(final String roomId)
+    {
+        LOGGER.info("{} :: joining room", roomId);
+        final List<String> servers = botConfig.getServers();
+        final CompletableFuture<RoomId> joined = servers == null || servers.isEmpty()
+            ? mxClient.roomAsync().joinById(roomId, null)
+            : mxClient.roomAsync().joinByIdOrAlias(roomId, servers, null);
 
-        if (!banned.isEmpty())
+        return joined.thenCompose(r ->
         {
-            LOGGER.info("{} :: found {} banned users", roomId, banned.size());
-            final Map<String, String> m = roomsBanned.get(roomId);
-            for (final Event e : banned)
-            {
-                if (e instanceof StateEvent)
-                {
-                    final StateEvent s = (StateEvent) e;
-                    if (s.getContent() instanceof RoomMemberContent)
-                    {
-                        final String reason = ((RoomMemberContent) s.getContent()).getReason();
-                        if (reason == null || reason.isEmpty())
-                        {
-                            m.put(s.getStateKey(), "");
-                        }
-                        else
-                        {
-                            m.put(s.getStateKey(), reason);
-                        }
-                    }
-                    else
-                    {
-                        m.put(s.getStateKey(), "");
-                    }
-                }
-            }
-        }
+            LOGGER.info("{} :: loading banned users", roomId);
+            return memberStore.loadAsync(roomId);
+        });
     }
 
     public void leaveRoom(final String roomId)
+    {
+        await(leaveRoomAsync(roomId));
+    }
+
+    public CompletableFuture<Void> leaveRoomAsync(final String roomId)
     {
         if(DONT_LEAVE_ROOM)
         {
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        try
-        {
-            LOGGER.info("{} :: leaving room", roomId);
-            mxClient.room().leave(roomId);
-
-            roomsUsers.remove(roomId);
-            roomsBanned.remove(roomId);
-        }
-        catch(final Exception e)
+        LOGGER.info("{} :: leaving room", roomId);
+        return mxClient.roomAsync().leave(roomId).handle((r, e) ->
         {
-            LOGGER.error("Unable to leave room ...", e);
-        }
+            if (e != null)
+            {
+                LOGGER.error("Unable to leave room ...", e);
+            }
+            else
+            {
+                memberStore.forget(roomId);
+            }
+            return null;
+        });
     }
 
+    /**
+     * Queue a message and return at once, it is sent later from the background and a failure is only logged.
+     * Use {@link #postAsync(String, String, boolean)} to wait for the message or to know it failed.
+     */
     public void post(final String roomId, final String message, final boolean markown)
     {
-        if (markown)
-        {
-            final MarkdownEngine markdownEngine = new MarkdownEngine();
-            mxClient.event().sendFormattedMessage(roomId, message, markdownEngine.render(message));
-        }
-        else
-        {
-            mxClient.event().sendMessage(roomId, message);
-        }
+        postAsync(roomId, message, markown);
+    }
+
+    /**
+     * Post a message, merged with the other messages of the room and sent from the background.
+     */
+    public CompletableFuture<Void> postAsync(final String roomId, final String message, final boolean markown)
+    {
+        return outbound.post(roomId, message, markown);
     }
 
     public String getRoomName(final String roomId)
@@ -313,61 +357,111 @@ public class ChildServ
 
     public boolean banUser(final String roomId, final String memberId, final String reason)
     {
-        if (!roomsBanned.get(roomId).containsKey(memberId))
+        return banUserAsync(roomId, memberId, reason).join();
+    }
+
+    /**
+     * Ban a member, completed with false if the member was already banned or the ban failed.
+     */
+    public CompletableFuture<Boolean> banUserAsync(final String roomId, final String memberId, final String reason)
+    {
+        if (memberStore.isBanned(roomId, memberId))
         {
-            LOGGER.info("Banning user {} from room {}", memberId, roomId);
-            try
-            {
-                if(BAN_UNBAN_DRY_RUN)
-                {
-                    System.err.println("DRY RUN !!! ban(" + roomId + ", " + memberId + ", " + reason + ")");
-                }
-                else
-                {
-                    mxClient.room().ban(roomId, memberId, reason);
-                }
+            return CompletableFuture.completedFuture(false);
+        }
 
-                roomsBanned.get(roomId).put(memberId, reason);
-                roomsUsers.get(roomId).remove(memberId);
+        LOGGER.info("Banning user {} from room {}", memberId, roomId);
+        final CompletableFuture<?> ban;
+        if(BAN_UNBAN_DRY_RUN)
+        {
+            System.err.println("DRY RUN !!! ban(" + roomId + ", " + memberId + ", " + reason + ")");
+            ban = CompletableFuture.completedFuture(null);
+        }
+        else
+        {
+            ban = mxClient.roomAsync().ban(roomId, memberId, reason);
+        }
 
-                return true;
-            }
-            catch(final MatrixException e)
+        return ban.handle((r, e) ->
+        {
+            if (e != null)
             {
                 LOGGER.error("Can't ban {} !", memberId, e);
+                return false;
             }
-        }
 
-        return false;
+            memberStore.banned(roomId, memberId, reason);
+            return true;
+        });
     }
 
     public boolean unbanUser(final String roomId, final String memberId)
     {
-        if(roomsBanned.get(roomId).containsKey(memberId))
+        return unbanUserAsync(roomId, memberId).join();
+    }
+
+    /**
+     * Unban a member, completed with false if the member was not banned or the unban failed.
+     */
+    public CompletableFuture<Boolean> unbanUserAsync(final String roomId, final String memberId)
+    {
+        if(!memberStore.isBanned(roomId, memberId))
         {
-            LOGGER.info("Un-banning user {} from room {}", memberId, roomId);
+            return CompletableFuture.completedFuture(false);
+        }
 
-            try
-            {
-                if(BAN_UNBAN_DRY_RUN)
-                {
-                    System.err.println("DRY RUN !!! unban(" + roomId + ", " + memberId + ")");
-                }
-                else
-                {
-                    mxClient.room().unban(roomId, memberId);
-                }
-                roomsBanned.get(roomId).remove(memberId);
+        LOGGER.info("Un-banning user {} from room {}", memberId, roomId);
+        final CompletableFuture<?> unban;
+        if(BAN_UNBAN_DRY_RUN)
+        {
+            System.err.println("DRY RUN !!! unban(" + roomId + ", " + memberId + ")");
+            unban = CompletableFuture.completedFuture(null);
+        }
+        else
+        {
+            unban = mxClient.roomAsync().unban(roomId, memberId);
+        }
 
-                return true;
-            }
-            catch (final MatrixException e)
+        return unban.handle((r, e) ->
+        {
+            if (e != null)
             {
                 LOGGER.error("Can't unban {} !", memberId, e);
+                return false;
             }
+
+            memberStore.unbanned(roomId, memberId);
+            return true;
+        });
+    }
+
+    // wait for a future on the calling thread, the failures being thrown as they were by the blocking calls
+    private static <T> T await(final CompletableFuture<T> future)
+    {
+        try
+        {
+            return future.join();
         }
+        catch (final CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
 
-        return false;
+    private static ExecutorService newMatrixExecutorService()
+    {
+        final AtomicInteger count = new AtomicInteger();
+        // a full backlog fails the request instead of running it on the caller, which can be the timer of the request
+        // scheduler or a lane : the scheduler completes the future of a refused request exceptionally
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MATRIX_THREADS, MATRIX_THREADS, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MATRIX_QUEUE_CAPACITY), r -> new Thread(r, "Matrix-" + count.getAndIncrement()), new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
     }
 
     public Config getConfig()
@@ -375,6 +469,11 @@ public class ChildServ
         return botConfig;
     }
 
+    public CommandLane getCommandLane()
+    {
+        return commandLane;
+    }
+
     private void iJoinRoom(final String roomId)
     {
         final List<String> servers = botConfig.getServers();
@@ -390,111 +489,144 @@ public class ChildServ
 
     private void clientLoggedIn()
     {
-        if (!DEBUG_MODE)
+        final long startTs = System.currentTimeMillis();
+
+        // leave all rooms without leaving rooms we must be present, and join the configured rooms
+        final List<String> previousRooms = DEBUG_MODE ? Collections.emptyList() : mxClient.room().joinedRooms().getJoinedRooms();
+        final RoomReconciler.Plan plan = RoomReconciler.plan(previousRooms, botConfig.getRooms(), !DEBUG_MODE && !DONT_LEAVE_ROOM);
+
+        final ExecutorService reconcileExecutorService = Executors.newFixedThreadPool(RECONCILE_PARALLELISM);
+        final RoomReconciler.Progress progress = new RoomReconciler(mxClient, memberStore, botConfig.getServers(), RECONCILE_PARALLELISM, reconcileExecutorService).run(plan);
+
+        // the sync starts with the first ready room, the others are handled as soon as they are ready
+        if (!progress.getFirstReady().join())
         {
-            // leave all rooms without leaving rooms we must be present
-            final List<String> previousRooms = mxClient.room().joinedRooms().getJoinedRooms();
-            LOGGER.info("We must leave {} rooms", previousRooms.size() - botConfig.getRooms().size());
-            previousRooms.forEach(room ->
-            {
-                if (!botConfig.getRooms().contains(room))
-                {
-                    leaveRoom(room);
+            LOGGER.warn("No configured room is ready, syncing anyway");
+        }
 
-                    try
-                    {
-                        Thread.sleep(TimeUnit.SECONDS.toMillis(5));
-                    }
-                    catch (InterruptedException e)
-                    {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-            });
+        // resume from the last processed batch, the events received while we were offline are not lost
+        final String nextBatch = DEBUG_MODE ? "" : botConfig.getNextBatch();
+        final boolean resume = !nextBatch.isEmpty();
+        if (resume)
+        {
+            LOGGER.info("Resuming sync from {}", nextBatch);
+            readyTs = -1;
+        }
+        else
+        {
+            readyTs = new Date().getTime();
         }
 
-        // join configured rooms
-        botConfig.getRooms().forEach(room ->
+        LOGGER.info("Ready in {} ms !", System.currentTimeMillis() - startTs);
+        syncLoop = new PipelinedSyncLoop(mxClient.sync(), this::processIncomingEvents, SYNC_QUEUE_CAPACITY);
+        final SyncParams params = SyncParams.builder()
+            .filter(DEBUG_MODE ? null : installSyncFilter())
+            .nextBatch(resume ? nextBatch : null)
+            .fullState(!resume)
+            .presence("online")
+            .timeout(10L * 1000L)
+            .build();
+        syncLoop.setInit(params);
+
+        // sync loop for matrix events
+        syncLoopExecutorService.submit(syncLoop);
+
+        // rooms added, removed or changed by editing the config are applied without a restart
+        botConfig.addChangeListener(change -> backgroundTasksExecutorService.execute(() -> applyConfigChange(change)));
+        botConfig.enableHotReload();
+
+        // background task for leaving welcome rooms
+        backgroundTasksExecutorService.scheduleWithFixedDelay(this::checkForObsoleteWelcomeRooms, 1, 1, TimeUnit.MINUTES);
+        backgroundTasksExecutorService.scheduleWithFixedDelay(this::sendPresenceStatus, 1, 30, TimeUnit.MINUTES);
+        backgroundTasksExecutorService.scheduleWithFixedDelay(this::logStatistics, 5, 5, TimeUnit.MINUTES);
+        receipts.start(backgroundTasksExecutorService, botConfig.getReceiptInterval());
+
+        progress.getAllDone().thenRunAsync(() ->
         {
-            try
-            {
-                joinRoom(room);
+            reconcileExecutorService.shutdown();
+            LOGGER.info("All rooms reconciled in {} ms", System.currentTimeMillis() - startTs);
 
-                try
-                {
-                    Thread.sleep(TimeUnit.SECONDS.toMillis(5));
-                }
-                catch (InterruptedException e)
-                {
-                    Thread.currentThread().interrupt();
-                }
-            }
-            catch (final MatrixException e)
+            if (!DEBUG_MODE)
             {
-                LOGGER.error("Unable to join room {}", room, e);
+                syncBanLists();
             }
-        });
 
-        // merge all banned user from room where we the flag is set
-        if(!DEBUG_MODE)
+            // say hello into the administration room(s)
+            botConfig.getSnapshot().getRooms(Config.RoomMode.ADMINISTRATION).forEach(room -> post(room, "Hello, ChildServ v" + ChildServVersion.VERSION + " is now online."));
+        }, backgroundTasksExecutorService);
+    }
+
+    // join and leave the rooms of a reloaded config, the other changes are read from the config snapshot
+    private void applyConfigChange(final ConfigChange change)
+    {
+        LOGGER.info("Config :: applying {}", change);
+
+        if (!DEBUG_MODE)
         {
-            final Map<String, String> allBan = new HashMap<>();
-            botConfig.getRooms().forEach(room ->
+            final List<CompletableFuture<Void>> rooms = new ArrayList<>();
+            change.getAddedRooms().forEach(room -> rooms.add(joinRoomAsync(room).exceptionally(e ->
             {
-                if (botConfig.isRoomModeEnabled(room, Config.RoomMode.BANLIST_SYNC))
-                {
-                    allBan.putAll(roomsBanned.get(room));
-                }
-            });
+                LOGGER.error("{} :: unable to join the room", room, e);
+                return null;
+            })));
+            change.getRemovedRooms().forEach(room -> rooms.add(leaveRoomAsync(room)));
+            CompletableFuture.allOf(rooms.toArray(new CompletableFuture[0])).join();
 
-            // now perform ban
-            if (!allBan.isEmpty())
+            if (change.isModeToggled(Config.RoomMode.BANLIST_SYNC) || change.isModeToggled(Config.RoomMode.SELF_MODERATOR) || change.isModeToggled(Config.RoomMode.SELF_ADMINISTRATOR))
             {
-                botConfig.getRooms().forEach(room ->
-                {
-                    if (botConfig.isRoomModeEnabled(room, Config.RoomMode.BANLIST_SYNC) && (botConfig.isRoomModeEnabled(room, Config.RoomMode.SELF_MODERATOR) || botConfig.isRoomModeEnabled(room, Config.RoomMode.SELF_ADMINISTRATOR)))
-                    {
-                        allBan.forEach((m, r) ->
-                        {
-                            if (banUser(room, m, r))
-                            {
-                                try
-                                {
-                                    Thread.sleep(TimeUnit.SECONDS.toMillis(5));
-                                }
-                                catch (InterruptedException e)
-                                {
-                                    Thread.currentThread().interrupt();
-                                }
-                            }
-                        });
-                    }
-                });
+                syncBanLists();
             }
         }
 
-        readyTs = new Date().getTime();
+        refreshSyncFilter();
+    }
 
-        LOGGER.info("Ready !");
-        final SyncLoop syncLoop = new SyncLoop(mxClient.sync(), this::processIncomingEvents);
-        final SyncParams params = SyncParams.builder().fullState(true).presence("online").timeout(10L * 1000L).build();
-        syncLoop.setInit(params);
+    // rooms sharing their ban list
+    private List<String> banListRooms()
+    {
+        return botConfig.getSnapshot().getRooms(Config.RoomMode.BANLIST_SYNC);
+    }
 
-        // sync loop for matrix events
-        syncLoopExecutorService.submit(syncLoop);
+    // rooms sharing their ban list where we can ban
+    private List<String> banListTargetRooms()
+    {
+        final ConfigSnapshot snapshot = botConfig.getSnapshot();
+        return snapshot.getRooms(Config.RoomMode.BANLIST_SYNC).stream().filter(room -> snapshot.isRoomModeEnabled(room, Config.RoomMode.SELF_MODERATOR) || snapshot.isRoomModeEnabled(room, Config.RoomMode.SELF_ADMINISTRATOR)).collect(Collectors.toList());
+    }
 
-        // background task for leaving welcome rooms
-        backgroundTasksExecutorService.scheduleWithFixedDelay(this::checkForObsoleteWelcomeRooms, 1, 1, TimeUnit.MINUTES);
-        backgroundTasksExecutorService.scheduleWithFixedDelay(this::sendPresenceStatus, 1, 30, TimeUnit.MINUTES);
+    // only issue the bans missing from the rooms sharing their ban list, the rooms are done at the same time
+    private void syncBanLists()
+    {
+        final long startTs = System.currentTimeMillis();
+        final BanIndex banIndex = memberStore.getBanIndex();
+        final Map<String, Map<String, String>> missing = banIndex.missingBans(banIndex.roomsOf(banListRooms()), banIndex.roomsOf(banListTargetRooms()));
+        if (missing.isEmpty())
+        {
+            LOGGER.info("Ban lists :: {} banned users, already in sync", banIndex.getBannedUsersCount());
+            return;
+        }
 
-        // say hello into the administration room(s)
-        botConfig.getRooms().forEach(room ->
+        // all the bans are queued at once, the request scheduler paces them without a thread per ban
+        final AtomicInteger issued = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final List<CompletableFuture<Void>> roomsDone = new ArrayList<>();
+        missing.forEach((room, bans) ->
         {
-            if (botConfig.isRoomModeEnabled(room, Config.RoomMode.ADMINISTRATION))
+            final List<CompletableFuture<Boolean>> roomBans = new ArrayList<>();
+            bans.forEach((memberId, reason) -> roomBans.add(banUserAsync(room, memberId, reason)));
+
+            roomsDone.add(CompletableFuture.allOf(roomBans.toArray(new CompletableFuture[0])).thenRun(() ->
             {
-                post(room, "Hello, ChildServ v" + ChildServVersion.VERSION + " is now online.");
-            }
+                final int roomIssued = (int) roomBans.stream().filter(CompletableFuture::join).count();
+                issued.addAndGet(roomIssued);
+                failed.addAndGet(bans.size() - roomIssued);
+                LOGGER.info("Ban lists :: {} :: {} bans issued on {} missing", room, roomIssued, bans.size());
+            }));
         });
+
+        CompletableFuture.allOf(roomsDone.toArray(new CompletableFuture[0])).join();
+
+        LOGGER.info("Ban lists :: {} banned users, {} bans issued, {} failed, in {} rooms, {} ms", banIndex.getBannedUsersCount(), issued.get(), failed.get(), missing.size(), System.currentTimeMillis() - startTs);
     }
 
     @SuppressWarnings("rawtypes")
@@ -503,20 +635,67 @@ public class ChildServ
         if (syncParams.isFullState())
         {
             syncParams.setFullState(false);
+
+            if (readyTs < 0)
+            {
+                // the stored token have been rejected, we are receiving the rooms history again
+                readyTs = new Date().getTime();
+            }
         }
 
+        final List<CompletableFuture<Void>> roomsDone = new ArrayList<>();
+
         final Rooms rooms = syncResponse.getRooms();
         if (rooms != null)
         {
             if (!DEBUG_MODE)
             {
                 processLeave(rooms);
-                processJoin(rooms);
-                processPosts(rooms);
             }
-            else
+
+            final Map<String, JoinedRoom> join = rooms.getJoin();
+            if (join != null)
             {
-                processPosts(rooms);
+                final ConfigSnapshot snapshot = botConfig.getSnapshot();
+                for (final Map.Entry<String, JoinedRoom> joinEntry : join.entrySet())
+                {
+                    final String roomId = joinEntry.getKey();
+                    final JoinedRoom joinedRoom = joinEntry.getValue();
+                    final Timeline timeline = joinedRoom.getTimeline();
+
+                    // member state changes between the previous batch and the timeline start, or lazy loaded members
+                    if (!DEBUG_MODE && snapshot.isRoom(roomId))
+                    {
+                        final boolean limited = timeline != null && Boolean.TRUE.equals(timeline.getLimited());
+                        final List<Event> stateEvents = joinedRoom.getState() != null ? joinedRoom.getState().getEvents() : null;
+                        if (limited || (stateEvents != null && !stateEvents.isEmpty()))
+                        {
+                            roomsDone.add(roomLanes.submit(roomId, () -> updateMembers(roomId, stateEvents, limited)));
+                        }
+                    }
+
+                    if (timeline == null || timeline.getEvents() == null || timeline.getEvents().isEmpty())
+                    {
+                        continue;
+                    }
+
+                    final EventRouter.RoomScope scope;
+                    if (snapshot.isRoom(roomId))
+                    {
+                        scope = EventRouter.RoomScope.WATCHED;
+                    }
+                    else if (welcomeRooms.containsKey(roomId))
+                    {
+                        scope = EventRouter.RoomScope.WELCOME;
+                    }
+                    else
+                    {
+                        continue;
+                    }
+
+                    // a slow room only delays the rooms sharing its lane
+                    roomsDone.add(roomLanes.submit(roomId, () -> eventRouter.route(roomId, scope, timeline.getEvents())));
+                }
             }
         }
 
@@ -605,6 +784,14 @@ public class ChildServ
                 }
             }
         }
+
+        // checkpoint once every room of this batch and of the previous ones have been processed, a restart will resume after it
+        if (!DEBUG_MODE && syncResponse.getNextBatch() != null)
+        {
+            final String nextBatch = syncResponse.getNextBatch();
+            roomsDone.add(lastCheckpoint);
+            lastCheckpoint = CompletableFuture.allOf(roomsDone.toArray(new CompletableFuture[0])).thenRun(() -> botConfig.setNextBatch(nextBatch));
+        }
     }
 
     private void processLeave(final Rooms rooms)
@@ -614,157 +801,132 @@ public class ChildServ
         {
             for (final Map.Entry<String, LeftRoom> leftEntry : leave.entrySet())
             {
-                if (botConfig.getRooms().contains(leftEntry.getKey()))
+                if (botConfig.getSnapshot().isRoom(leftEntry.getKey()))
                 {
-                    syncLoopExecutorService.submit(() -> comeBack(leftEntry.getKey()));
+                    backgroundTasksExecutorService.schedule(() -> comeBack(leftEntry.getKey()), COME_BACK_DELAY_SECONDS, TimeUnit.SECONDS);
                 }
             }
         }
     }
 
-    private void processJoin(final Rooms rooms)
+    private void updateMembers(final String roomId, final List<Event> stateEvents, final boolean limited)
     {
-        final Map<String, JoinedRoom> join = rooms.getJoin();
-        if (join != null)
+        if (stateEvents != null)
         {
-            for (final Map.Entry<String, JoinedRoom> joinEntry : join.entrySet())
+            stateEvents.forEach(event ->
             {
-                if (botConfig.getRooms().contains(joinEntry.getKey()))
+                if (RoomMember.TYPE.equals(event.getType()))
                 {
-                    final JoinedRoom joinedRoom = joinEntry.getValue();
-                    final Timeline timeline = joinedRoom.getTimeline();
-                    if (timeline != null && timeline.getEvents() != null && !timeline.getEvents().isEmpty())
-                    {
-                        timeline.getEvents().forEach(event ->
-                        {
-                            if (event instanceof RoomEvent)
-                            {
-                                final long serverTs = ((RoomEvent<?>) event).getOriginServerTs();
-                                if (serverTs > readyTs)
-                                {
-                                    // update read markers
-                                    final RoomEvent<?> roomEvent = (RoomEvent<?>) event;
-                                    final String lastEvent = roomEvent.getEventId();
-
-                                    mxClient.receipt().sendReceipt(joinEntry.getKey(), lastEvent);
-                                }
-                            }
+                    memberStore.apply(roomId, event);
+                }
+            });
+        }
 
+        // some events have been dropped from the timeline, what we know may be outdated
+        if (limited)
+        {
+            LOGGER.info("{} :: limited timeline, reloading members", roomId);
+            try
+            {
+                memberStore.load(roomId);
+            }
+            catch (final MatrixException e)
+            {
+                LOGGER.error("{} :: unable to reload members", roomId, e);
+            }
+        }
+    }
 
-                            if (event.getType().equals("m.room.member") && event instanceof RoomEvent)
-                            {
-                                final long serverTs = ((RoomEvent<?>) event).getOriginServerTs();
-                                if (serverTs > readyTs)
-                                {
-                                    if (event.getContent() instanceof RoomMemberContent)
-                                    {
-                                        switch (((RoomMemberContent) event.getContent()).getMembership())
-                                        {
-                                            case RoomMemberContent.JOIN:
-                                            {
-                                                final String senderId = ((RoomEvent<?>) event).getSender();
-                                                if (!roomsUsers.get(joinEntry.getKey()).contains(senderId))
-                                                {
-                                                    LOGGER.info("{} joined the room {}", senderId, joinEntry.getKey());
-                                                    roomsUsers.get(joinEntry.getKey()).add(senderId);
-
-                                                    if (botConfig.isRoomModeEnabled(joinEntry.getKey(), Config.RoomMode.WELCOME))
-                                                    {
-                                                        sendWelcomeMessage(senderId, joinEntry.getKey());
-                                                    }
-                                                }
-                                                else
-                                                {
-                                                    LOGGER.info("{} changed it's display name", senderId);
-                                                }
-                                                break;
-                                            }
-
-                                            case RoomMemberContent.LEAVE:
-                                            {
-                                                // check if this is a unban (api bug : the unban action can be seen as a leave action)
-                                                if (event instanceof StateEvent)
-                                                {
-                                                    final String unbanned = ((StateEvent<?>) event).getStateKey();
-                                                    if (unbanned != null && !unbanned.isEmpty())
-                                                    {
-                                                        if (roomsBanned.get(joinEntry.getKey()).containsKey(unbanned))
-                                                        {
-                                                            roomsBanned.get(joinEntry.getKey()).remove(unbanned);
-                                                            LOGGER.info("{} is unbanned from the room {}", unbanned, joinEntry.getKey());
-                                                            break;
-                                                        }
-                                                    }
-                                                }
-
-                                                final String senderId = ((RoomEvent<?>) event).getSender();
-                                                roomsUsers.get(joinEntry.getKey()).remove(senderId);
-
-                                                break;
-                                            }
-
-                                            case RoomMemberContent.BAN:
-                                            {
-                                                final String bannedId = ((StateEvent<?>) event).getStateKey();
-                                                final String moderatorId = ((RoomEvent<?>) event).getSender();
-                                                if (!moderatorId.equals(selfMemberId))
-                                                {
-                                                    final String reason = ((RoomMemberContent) event.getContent()).getReason();
-                                                    roomsBanned.get(joinEntry.getKey()).put(bannedId, reason);
-                                                    roomsUsers.get(joinEntry.getKey()).remove(bannedId);
-                                                    LOGGER.info("{} have been banned from the room {} by {} (reason : {})", bannedId, joinEntry.getKey(), moderatorId, reason);
-
-                                                    // propagate ban for all the other rooms
-                                                    botConfig.getRooms().forEach(room ->
-                                                    {
-                                                        if (!room.equals(joinEntry.getKey()))
-                                                        {
-                                                            if (botConfig.isRoomModeEnabled(room, Config.RoomMode.BANLIST_SYNC) && (botConfig.isRoomModeEnabled(room, Config.RoomMode.SELF_MODERATOR) || botConfig.isRoomModeEnabled(room, Config.RoomMode.SELF_ADMINISTRATOR)))
-                                                            {
-                                                                banUser(room, bannedId, reason);
-                                                            }
-                                                        }
-                                                    });
-                                                }
-
-                                                break;
-                                            }
-
-                                            default:
-                                                LOGGER.warn("Not implemented room membership event : {}", ((RoomMemberContent) event.getContent()).getMembership());
-                                                break;
-                                        }
-                                    }
-                                }
-                            }
-                        });
-                    }
-                }
-                else if (welcomeRooms.containsKey(joinEntry.getKey()))
+    private void registerEventHandlers()
+    {
+        if (!DEBUG_MODE)
+        {
+            eventRouter.register("receipt", null, EventRouter.RoomScope.WATCHED, this::onReceiptEvent);
+            eventRouter.register("membership", RoomMember.TYPE, EventRouter.RoomScope.WATCHED, this::onMembershipEvent);
+            eventRouter.register("welcome-membership", RoomMember.TYPE, EventRouter.RoomScope.WELCOME, this::onWelcomeRoomMembershipEvent);
+        }
+
+        eventRouter.register("encrypted", RoomEncrypted.TYPE, EventRouter.RoomScope.WATCHED, this::onEncryptedEvent);
+        eventRouter.register("message", RoomMessage.TYPE, EventRouter.RoomScope.WATCHED, this::onMessageEvent);
+    }
+
+    private boolean isNew(final Event<?> event)
+    {
+        return event instanceof RoomEvent && ((RoomEvent<?>) event).getOriginServerTs() > readyTs;
+    }
+
+    private void onReceiptEvent(final String roomId, final Event<?> event)
+    {
+        if (isNew(event))
+        {
+            // update read markers, only the last event of the room is sent
+            final RoomEvent<?> roomEvent = (RoomEvent<?>) event;
+            receipts.mark(roomId, roomEvent.getEventId());
+        }
+    }
+
+    private void onMembershipEvent(final String roomId, final Event<?> event)
+    {
+        if (!isNew(event) || !(event instanceof StateEvent))
+        {
+            return;
+        }
+
+        final StateEvent<?> memberEvent = (StateEvent<?>) event;
+        switch (memberStore.apply(roomId, event))
+        {
+            case JOINED:
+            {
+                final String senderId = memberEvent.getSender();
+                LOGGER.info("{} joined the room {}", senderId, roomId);
+
+                if (botConfig.isRoomModeEnabled(roomId, Config.RoomMode.WELCOME))
                 {
-                    final JoinedRoom joinedRoom = joinEntry.getValue();
-                    final Timeline timeline = joinedRoom.getTimeline();
-                    if (timeline != null && timeline.getEvents() != null && !timeline.getEvents().isEmpty())
+                    sendWelcomeMessageAsync(senderId, roomId).exceptionally(e ->
                     {
-                        timeline.getEvents().forEach(event ->
-                        {
-                            if (event.getType().equals("m.room.member") && event instanceof RoomEvent)
-                            {
-                                final long serverTs = ((RoomEvent<?>) event).getOriginServerTs();
-                                if (serverTs > readyTs)
-                                {
-                                    if (event.getContent() instanceof RoomMemberContent)
-                                    {
-                                        if (((RoomMemberContent) event.getContent()).getMembership().equals("leave"))
-                                        {
-                                            leaveWelcomeRoom("user left", joinEntry.getKey());
-                                        }
-                                    }
-                                }
-                            }
-                        });
-                    }
+                        LOGGER.error("Unable to welcome {}", senderId, e);
+                        return null;
+                    });
                 }
+                break;
+            }
+
+            case PROFILE_CHANGED:
+                LOGGER.info("{} changed it's display name", memberEvent.getSender());
+                break;
+
+            case UNBANNED:
+                LOGGER.info("{} is unbanned from the room {}", memberEvent.getStateKey(), roomId);
+                break;
+
+            case BANNED:
+            {
+                final String bannedId = memberEvent.getStateKey();
+                final String moderatorId = memberEvent.getSender();
+                if (!moderatorId.equals(selfMemberId))
+                {
+                    final String reason = memberStore.getBanned(roomId).get(bannedId);
+                    LOGGER.info("{} have been banned from the room {} by {} (reason : {})", bannedId, roomId, moderatorId, reason);
+
+                    // propagate ban to the rooms sharing their ban list where the user is not banned yet
+                    final BanIndex banIndex = memberStore.getBanIndex();
+                    banIndex.missingRooms(bannedId, banIndex.roomsOf(banListTargetRooms())).forEach(room -> banUserAsync(room, bannedId, reason));
+                }
+                break;
+            }
+
+            default:
+                break;
+        }
+    }
+
+    private void onWelcomeRoomMembershipEvent(final String roomId, final Event<?> event)
+    {
+        if (isNew(event) && event.getContent() instanceof RoomMemberContent)
+        {
+            if (((RoomMemberContent) event.getContent()).getMembership().equals("leave"))
+            {
+                leaveWelcomeRoom("user left", roomId);
             }
         }
     }
@@ -776,56 +938,85 @@ public class ChildServ
         mxClient.room().leave(roomId);
     }
 
-    private void processPosts(final Rooms rooms)
+    /**
+     * Upload a new sync filter if the handled event types have changed, the running sync loop will use it
+     * for the next long-poll. The upload is made later from the background, so the callers never wait for it, and the
+     * changes made meanwhile are part of the same upload.
+     */
+    public void refreshSyncFilter()
     {
-        final Map<String, JoinedRoom> join = rooms.getJoin();
-        if (join != null)
+        if (DEBUG_MODE || syncLoop == null)
+        {
+            return;
+        }
+
+        if (syncFilterRefreshPending.compareAndSet(false, true))
         {
-            for (final Map.Entry<String, JoinedRoom> joinEntry : join.entrySet())
+            backgroundTasksExecutorService.schedule(() ->
             {
-                if (botConfig.getRooms().contains(joinEntry.getKey()))
+                // cleared before the upload, so a change made during it schedules another one
+                syncFilterRefreshPending.set(false);
+                try
                 {
-                    final JoinedRoom joinedRoom = joinEntry.getValue();
-                    final Timeline timeline = joinedRoom.getTimeline();
-                    if (timeline != null && timeline.getEvents() != null && !timeline.getEvents().isEmpty())
-                    {
-                        timeline.getEvents().forEach(event ->
-                        {
-                            if (event.getType().equals("m.room.encrypted") && event instanceof RoomEvent)
-                            {
-                                final long serverTs = ((RoomEvent<?>) event).getOriginServerTs();
-                                if (serverTs > readyTs)
-                                {
-                                    if (event instanceof RoomEncrypted)
-                                    {
-                                        final RoomEncryptedContent encryptedContent = (RoomEncryptedContent) event.getContent();
-                                        System.err.println(encryptedContent + " - " + encryptedContent.getAlgorithm());
-                                    }
-                                }
-                            }
-                            else if (event.getType().equals("m.room.message") && event instanceof RoomEvent)
-                            {
-                                final long serverTs = ((RoomEvent<?>) event).getOriginServerTs();
-                                if (serverTs > readyTs)
-                                {
-                                    if (event instanceof RoomMessage)
-                                    {
-                                        if (event.getContent() instanceof Text)
-                                        {
-                                            final Text textContent = (Text) event.getContent();
-                                            final String text = textContent.getBody();
-
-                                            // check if this is a command
-                                            if (text.startsWith(botConfig.getPrompt()))
-                                            {
-                                                processCommand(text, joinEntry.getKey(), ((RoomMessage<?>) event).getSender());
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        });
-                    }
+                    syncLoop.setFilter(installSyncFilter());
+                }
+                catch (final RuntimeException e)
+                {
+                    LOGGER.error("Unable to refresh the sync filter", e);
+                }
+            }, SYNC_FILTER_REFRESH_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private synchronized String installSyncFilter()
+    {
+        final SyncFilterCompiler.CompiledFilter compiled = SyncFilterCompiler.compile(botConfig);
+
+        final String filterId = botConfig.getSyncFilterId();
+        if (!filterId.isEmpty() && compiled.getFingerprint().equals(botConfig.getSyncFilterFingerprint()))
+        {
+            return filterId;
+        }
+
+        try
+        {
+            final FilterResponse response = mxClient.filter().uploadFilter(compiled.getFilter());
+            LOGGER.info("Uploaded new sync filter {}", response.getFilterId());
+
+            botConfig.setSyncFilter(response.getFilterId(), compiled.getFingerprint());
+            return response.getFilterId();
+        }
+        catch (final MatrixException e)
+        {
+            LOGGER.error("Unable to upload the sync filter, syncing without filter", e);
+            botConfig.setSyncFilter("", "");
+        }
+
+        return null;
+    }
+
+    private void onEncryptedEvent(final String roomId, final Event<?> event)
+    {
+        if (isNew(event) && event instanceof RoomEncrypted)
+        {
+            final RoomEncryptedContent encryptedContent = (RoomEncryptedContent) event.getContent();
+            System.err.println(encryptedContent + " - " + encryptedContent.getAlgorithm());
+        }
+    }
+
+    private void onMessageEvent(final String roomId, final Event<?> event)
+    {
+        if (isNew(event) && event instanceof RoomMessage)
+        {
+            if (event.getContent() instanceof Text)
+            {
+                final Text textContent = (Text) event.getContent();
+                final String text = textContent.getBody();
+
+                // check if this is a command
+                if (text.startsWith(botConfig.getPrompt()))
+                {
+                    processCommand(text, roomId, ((RoomMessage<?>) event).getSender());
                 }
             }
         }
@@ -839,19 +1030,30 @@ public class ChildServ
             // check if the command have been issued by an admin
             if (botConfig.isAdmin(senderId))
             {
-                try
-                {
-                    dispatcher.execute(text.substring(botConfig.getPrompt().length()), new SourceContext(ChildServ.this, roomId, senderId));
-                }
-                catch (final CommandSyntaxException e)
+                final String command = text.substring(botConfig.getPrompt().length());
+                final String name = command.trim().split(" ", 2)[0];
+                final SourceContext source = new SourceContext(ChildServ.this, roomId, senderId);
+
+                if (INLINE_COMMANDS.contains(name))
                 {
-                    mxClient.event().sendMessage(roomId, e.getMessage());
+                    try
+                    {
+                        dispatcher.execute(command, source);
+                    }
+                    catch (final CommandSyntaxException e)
+                    {
+                        mxClient.event().sendMessage(roomId, e.getMessage());
+                    }
+                    return;
                 }
+
+                // the commands may take long, the events of all the rooms must not wait for them
+                commandLane.submit(roomId, name, () -> dispatcher.execute(command, source));
             }
         }
     }
 
-    private void sendWelcomeMessage(final String who, final String roomId)
+    private CompletableFuture<Void> sendWelcomeMessageAsync(final String who, final String roomId)
     {
         LOGGER.info("Sending welcome message to {}", who);
 
@@ -862,36 +1064,30 @@ public class ChildServ
         invitations.add(who);
         createRoomRequest.setInvite(invitations);
 
-        final RoomId newRoomId = mxClient.room().create(createRoomRequest);
-
-        final MarkdownEngine markdownEngine = new MarkdownEngine();
-
-        // find the param for the WELCOME mode of this room
-        final String param = botConfig.getParam(roomId, Config.RoomMode.WELCOME);
-        if(param != null && !param.isEmpty())
+        return mxClient.roomAsync().create(createRoomRequest).thenCompose(newRoomId ->
         {
-            // now try to find the variable for this parameter
-            final String message = botConfig.getVars().get(param);
-            if(message != null && !message.isEmpty())
+            // tracked at once, so the room is left even if the message can't be sent
+            welcomeRooms.put(newRoomId.getRoomId(), new WelcomeRoom(newRoomId.getRoomId()));
+
+            // find the param for the WELCOME mode of this room
+            final String param = botConfig.getParam(roomId, Config.RoomMode.WELCOME);
+            if(param != null && !param.isEmpty())
             {
-                mxClient.event().sendFormattedMessage(newRoomId.getRoomId(), message, markdownEngine.render(message));
+                // now try to find the variable for this parameter
+                final String message = botConfig.getVars().get(param);
+                if(message != null && !message.isEmpty())
+                {
+                    final MarkdownEngine markdownEngine = new MarkdownEngine();
+                    return mxClient.eventAsync().sendFormattedMessage(newRoomId.getRoomId(), message, markdownEngine.render(message)).thenRun(() -> { });
+                }
             }
-        }
 
-        welcomeRooms.put(newRoomId.getRoomId(), new WelcomeRoom(newRoomId.getRoomId()));
+            return CompletableFuture.completedFuture(null);
+        });
     }
 
     private void comeBack(final String roomId)
     {
-        try
-        {
-            Thread.sleep(TimeUnit.SECONDS.toMillis(5));
-        }
-        catch (final InterruptedException e)
-        {
-            Thread.currentThread().interrupt();
-        }
-
         LOGGER.debug("Joining room {} after having kicked", roomId);
         iJoinRoom(roomId);
     }
@@ -910,6 +1106,47 @@ public class ChildServ
         mxClient.presence().setPresenceStatus("online", new Date().toLocaleString());
     }
 
+    private void logStatistics()
+    {
+        LOGGER.info("Sync :: {} fetched, {} processed, queue depth {}/{} (peak {}), fetching waited {} ms",
+            syncLoop.getFetchedBatches(), syncLoop.getProcessedBatches(), syncLoop.getQueueDepth(), syncLoop.getQueueCapacity(),
+            syncLoop.getPeakQueueDepth(), syncLoop.getBackpressureMillis());
+
+        for (int lane = 0; lane < roomLanes.getLaneCount(); lane++)
+        {
+            LOGGER.info("Lane {} :: {} submitted, {} processed, queue depth {} (peak {}), busy {} ms",
+                lane, roomLanes.getSubmitted(lane), roomLanes.getProcessed(lane), roomLanes.getQueueDepth(lane),
+                roomLanes.getPeakQueueDepth(lane), roomLanes.getBusyMillis(lane));
+        }
+
+        LOGGER.info("Outbound :: executed {}, queued {}, in flight {}, throttled {}, retried {}, resent {}", requestScheduler.getExecuted(),
+            requestScheduler.getQueued(), requestScheduler.getInFlight(), requestScheduler.getThrottled(), requestScheduler.getRetried(),
+            requestScheduler.getResent());
+
+        final PoolStats connections = transport.getStats();
+        LOGGER.info("Connections :: {} leased, {} available, {} pending, max {}", connections.getLeased(), connections.getAvailable(),
+            connections.getPending(), connections.getMax());
+
+        final ConfigSaver saver = botConfig.getSaver();
+        if (saver != null)
+        {
+            LOGGER.info("Config :: {} changes, {} saves, {} failed, last save {} ms, total {} ms", saver.getRequested(), saver.getSaved(),
+                saver.getFailed(), saver.getLastSaveMillis(), saver.getTotalSaveMillis());
+        }
+
+        LOGGER.info("Messages :: {} posted, {} sent, {} failed, queue depth {} (peak {})", outbound.getPosted(), outbound.getSent(),
+            outbound.getFailed(), outbound.getQueueDepth(), outbound.getPeakQueueDepth());
+
+        LOGGER.info("Receipts :: {} events read, {} markers sent, {} failed, {} pending", receipts.getMarked(), receipts.getSent(),
+            receipts.getFailed(), receipts.getPending());
+
+        LOGGER.info("Commands :: {} submitted, {} done, {} failed, {} timed out, {} cancelled, {} rooms busy, busy {} ms",
+            commandLane.getSubmitted(), commandLane.getCompleted(), commandLane.getFailed(), commandLane.getTimedOut(),
+            commandLane.getCancelled(), commandLane.getRunning(), commandLane.getBusyMillis());
+
+        eventRouter.getHandledCounts().forEach((handler, count) -> LOGGER.info("Handler {} :: {} events", handler, count));
+    }
+
     public static void printEvent(final Event<?> event)
     {
         System.out.println("Type: " + event.getType());
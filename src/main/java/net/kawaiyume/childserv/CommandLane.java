@@ -0,0 +1,381 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  CommandLane.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Run the admin commands out of the event processing, the commands of a room are run one after the other in the order
+ * they have been received, while the commands of other rooms are run at the same time.
+ * A command running longer than the timeout is interrupted and reported at once, the next one of its room is only started
+ * once it has returned so two commands of a room never run together. The outcome and the duration of each command are
+ * reported to its room.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class CommandLane
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandLane.class);
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final long timeoutMillis;
+
+    // room id, message
+    private final BiConsumer<String, String> reporter;
+
+    // rooms having a command running, guarded by this
+    private final Map<String, RoomQueue> rooms = new HashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    public CommandLane(final int workers, final long timeoutMillis, final BiConsumer<String, String> reporter)
+    {
+        this.timeoutMillis = timeoutMillis;
+        this.reporter = reporter;
+
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, workers), r ->
+        {
+            final Thread t = new Thread(r, "CommandLane-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            final Thread t = new Thread(r, "CommandTimeout");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queue a command for a room, it is started once the previous commands of the room are done.
+     */
+    public synchronized void submit(final String roomId, final String name, final Callable<?> command)
+    {
+        submitted.incrementAndGet();
+
+        final RoomQueue queue = rooms.computeIfAbsent(roomId, RoomQueue::new);
+        queue.pending.add(new Task(queue, name, command));
+        if (queue.running == null)
+        {
+            startNext(queue);
+        }
+    }
+
+    /**
+     * Cancel the running and the waiting commands of a room.
+     *
+     * @return the count of commands cancelled
+     */
+    public int cancel(final String roomId)
+    {
+        final List<Task> tasks = new ArrayList<>();
+        synchronized (this)
+        {
+            final RoomQueue queue = rooms.get(roomId);
+            if (queue == null)
+            {
+                return 0;
+            }
+
+            tasks.addAll(queue.pending);
+            queue.pending.clear();
+            if (queue.running != null)
+            {
+                tasks.add(queue.running);
+            }
+        }
+
+        int count = 0;
+        for (final Task task : tasks)
+        {
+            if (task.finish(Outcome.CANCELLED, null))
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    // called with the lock held
+    private void startNext(final RoomQueue queue)
+    {
+        final Task task = queue.pending.poll();
+        queue.running = task;
+        if (task == null)
+        {
+            rooms.remove(queue.roomId);
+            return;
+        }
+
+        task.future = executor.submit(task::run);
+    }
+
+    public int getRunning()
+    {
+        synchronized (this)
+        {
+            return rooms.size();
+        }
+    }
+
+    public long getSubmitted()
+    {
+        return submitted.get();
+    }
+
+    public long getCompleted()
+    {
+        return completed.get();
+    }
+
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    public long getTimedOut()
+    {
+        return timedOut.get();
+    }
+
+    public long getCancelled()
+    {
+        return cancelled.get();
+    }
+
+    public long getBusyMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+    }
+
+    public void shutdown()
+    {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private enum Outcome
+    {
+        DONE,
+        FAILED,
+        TIMED_OUT,
+        CANCELLED
+    }
+
+    private static final class RoomQueue
+    {
+        private final String roomId;
+
+        private final Queue<Task> pending = new ArrayDeque<>();
+        private Task running;
+
+        private RoomQueue(final String roomId)
+        {
+            this.roomId = roomId;
+        }
+    }
+
+    private final class Task
+    {
+        private final RoomQueue queue;
+        private final String name;
+        private final Callable<?> command;
+
+        // set when queued on the workers then when started, guarded by the lane
+        private long startNanos;
+        private Future<?> future;
+        private ScheduledFuture<?> timeout;
+
+        private boolean finished;
+
+        // the worker is done with the task, the next one of the room can start
+        private boolean released;
+
+        private Task(final RoomQueue queue, final String name, final Callable<?> command)
+        {
+            this.queue = queue;
+            this.name = name;
+            this.command = command;
+        }
+
+        private void run()
+        {
+            try
+            {
+                // the time waiting for a worker doesn't count
+                synchronized (CommandLane.this)
+                {
+                    if (finished)
+                    {
+                        return;
+                    }
+                    startNanos = System.nanoTime();
+                    timeout = timer.schedule(() -> finish(Outcome.TIMED_OUT, null), timeoutMillis, TimeUnit.MILLISECONDS);
+                }
+
+                try
+                {
+                    command.call();
+                    finish(Outcome.DONE, null);
+                }
+                catch (final Exception e)
+                {
+                    finish(Outcome.FAILED, e);
+                }
+            }
+            finally
+            {
+                // an interrupted command can still run for a while, the next one waits for it
+                synchronized (CommandLane.this)
+                {
+                    release();
+                }
+            }
+        }
+
+        // called with the lock held
+        private void release()
+        {
+            if (!released)
+            {
+                released = true;
+                if (queue.running == this)
+                {
+                    startNext(queue);
+                }
+            }
+        }
+
+        /**
+         * Only the first outcome counts, a command interrupted by its timeout or a cancel ends unnoticed but still holds its
+         * room until it returns.
+         */
+        private boolean finish(final Outcome outcome, final Exception error)
+        {
+            final long elapsedMillis;
+            synchronized (CommandLane.this)
+            {
+                if (finished)
+                {
+                    return false;
+                }
+                finished = true;
+
+                final boolean started = timeout != null;
+                elapsedMillis = started ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) : 0;
+                if (started)
+                {
+                    busyNanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(elapsedMillis));
+                    timeout.cancel(false);
+                }
+                if (future != null && (outcome == Outcome.TIMED_OUT || outcome == Outcome.CANCELLED))
+                {
+                    future.cancel(true);
+                }
+
+                // a task not started yet will never be run, the worker releases the others
+                if (!started)
+                {
+                    release();
+                }
+            }
+
+            switch (outcome)
+            {
+                case DONE:
+                    completed.incrementAndGet();
+                    report("Done : " + name + ", " + elapsedMillis + " ms");
+                    break;
+                case FAILED:
+                    failed.incrementAndGet();
+                    LOGGER.error("{} :: command {} failed", queue.roomId, name, error);
+                    report("Failed : " + name + ", " + (error.getMessage() != null ? error.getMessage() : error.toString()));
+                    break;
+                case TIMED_OUT:
+                    timedOut.incrementAndGet();
+                    LOGGER.warn("{} :: command {} timed out after {} ms", queue.roomId, name, elapsedMillis);
+                    report("Timed out : " + name + ", after " + elapsedMillis + " ms");
+                    break;
+                case CANCELLED:
+                    cancelled.incrementAndGet();
+                    report("Cancelled : " + name);
+                    break;
+            }
+
+            return true;
+        }
+
+        private void report(final String message)
+        {
+            try
+            {
+                reporter.accept(queue.roomId, message);
+            }
+            catch (final RuntimeException e)
+            {
+                LOGGER.error("{} :: unable to report the end of {}", queue.roomId, name, e);
+            }
+        }
+    }
+}
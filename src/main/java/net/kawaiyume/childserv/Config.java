@@ -37,20 +37,30 @@
 package net.kawaiyume.childserv;
 
 import org.jnbt.CompoundTag;
+import org.jnbt.IntTag;
 import org.jnbt.ListTag;
 import org.jnbt.StringTag;
 import org.jnbt.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * @author iXô (ixo@kawaiyume.net)
  */
-public class Config extends NBTNavigator
+public class Config
 {
     private enum Folder
     {
@@ -59,7 +69,12 @@ public class Config extends NBTNavigator
         COMMANDS,
         ADMINS,
         VARS,
-        SERVERS
+        SERVERS,
+        SYNC,
+        STORAGE
+        ;
+
+        private final NBTPath path = NBTPath.of(name().toLowerCase());
     }
 
     private enum Key
@@ -74,7 +89,21 @@ public class Config extends NBTNavigator
         MODES,
         PARAMS,
 
-        PROMPT
+        PROMPT,
+        TIMEOUT,
+
+        FILTERID,
+        FILTERFINGERPRINT,
+        NEXTBATCH,
+        LANES,
+        RECEIPTINTERVAL,
+
+        OUTBOUNDCONCURRENCY,
+
+        SAVEDELAY
+        ;
+
+        private final String key = name().toLowerCase();
     }
 
     public enum RoomMode
@@ -114,163 +143,611 @@ public class Config extends NBTNavigator
         }
     }
 
+    // count of rooms processed at the same time
+    private static final int DEFAULT_ROOM_LANES = 4;
+
+    // count of requests sent to the homeserver at the same time
+    private static final int DEFAULT_OUTBOUND_CONCURRENCY = 8;
+
+    // a command running longer is interrupted
+    private static final int DEFAULT_COMMAND_TIMEOUT_SECONDS = 300;
+
+    // read markers of the events received during this window are sent at once
+    private static final int DEFAULT_RECEIPT_INTERVAL_MILLIS = 2000;
+
+    // changes made during this window are written at once
+    private static final int DEFAULT_SAVE_DELAY_MILLIS = 1000;
+
+    // the sync token changes on every batch, it is written at most once per interval and on flush
+    private static final long NEXT_BATCH_SAVE_INTERVAL_MILLIS = 30000;
+
+    // outside changes are reloaded once the files are quiet for this delay
+    private static final long RELOAD_DELAY_MILLIS = 500;
+
+    // paths of the settings, compiled once
+    private static final NBTPath HOST = setting(Folder.CONNECTION, Key.HOST);
+    private static final NBTPath USERNAME = setting(Folder.CONNECTION, Key.USERNAME);
+    private static final NBTPath PASSWORD = setting(Folder.CONNECTION, Key.PASSWORD);
+    private static final NBTPath ACCESS_TOKEN = setting(Folder.CONNECTION, Key.ACCESSTOKEN);
+    private static final NBTPath DEVICE_ID = setting(Folder.CONNECTION, Key.DEVICEID);
+    private static final NBTPath USER_ID = setting(Folder.CONNECTION, Key.USERID);
+    private static final NBTPath OUTBOUND_CONCURRENCY = setting(Folder.CONNECTION, Key.OUTBOUNDCONCURRENCY);
+    private static final NBTPath PROMPT = setting(Folder.COMMANDS, Key.PROMPT);
+    private static final NBTPath COMMAND_TIMEOUT = setting(Folder.COMMANDS, Key.TIMEOUT);
+    private static final NBTPath FILTER_ID = setting(Folder.SYNC, Key.FILTERID);
+    private static final NBTPath FILTER_FINGERPRINT = setting(Folder.SYNC, Key.FILTERFINGERPRINT);
+    private static final NBTPath NEXT_BATCH = setting(Folder.SYNC, Key.NEXTBATCH);
+    private static final NBTPath LANES = setting(Folder.SYNC, Key.LANES);
+    private static final NBTPath RECEIPT_INTERVAL = setting(Folder.SYNC, Key.RECEIPTINTERVAL);
+    private static final NBTPath SAVE_DELAY = setting(Folder.STORAGE, Key.SAVEDELAY);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Config.class);
+
+    private final ConfigStore store;
+
+    // the whole config, loaded from the store and changed in place, replaced on reload
+    private NBTNavigator tree;
+
+    // compiled rooms view, replaced after each save so readers never walk the NBT tree
+    private volatile ConfigSnapshot snapshot;
+
+    // when set, the file is written from a background thread instead of on each change
+    private ConfigSaver saver;
+
+    // with the saver, the paths changed since its last write and whether the whole config has to be rewritten
+    private final Set<NBTPath> dirty = new LinkedHashSet<>();
+    private boolean compactionPending;
+
+    // the sync token kept in the tree but not written yet, and when it was last written
+    private boolean nextBatchPending;
+    private long nextBatchSavedNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(NEXT_BATCH_SAVE_INTERVAL_MILLIS);
+
+    // when set, outside changes of the files are reloaded
+    private ConfigWatcher watcher;
+
+    private final List<Consumer<ConfigChange>> listeners = new CopyOnWriteArrayList<>();
+
     public Config()
     {
-        super("config.dat");
+        this(ConfigStore.fromSystemProperty());
     }
 
-    private CompoundTag folder(final String path)
+    public Config(final ConfigStore store)
     {
-        CompoundTag ret = getCompound(path);
-        if (ret == null)
+        this.store = store;
+        this.tree = new NBTNavigator(store.load());
+
+        LOGGER.info("Config stored in {}", store.describe());
+
+        compile();
+    }
+
+    public synchronized CompoundTag getRoot()
+    {
+        return tree.getRoot();
+    }
+
+    public synchronized boolean save()
+    {
+        compile();
+
+        if (saver != null)
         {
-            ret = new CompoundTag(path);
-            addCompound(path, ret);
+            compactionPending = true;
+            saver.request();
+            return true;
         }
 
-        return ret;
+        return store.compact(tree.getRoot()).run();
     }
 
-    private ListTag list(final String path, final Class<? extends Tag<?>> type)
+    // run by the saver : the changed entries are captured under the config lock and appended outside of it, or the whole
+    // config is rewritten when asked or when the store needs it
+    private boolean persist()
     {
-        ListTag ret = (ListTag) findTag(path);
-        if (ret == null)
+        final ConfigStore.Append append;
+        final ConfigStore.Compaction compaction;
+        final List<NBTPath> captured;
+        synchronized (this)
         {
-            ret = new ListTag(path, type, new ArrayList<>());
+            ConfigStore.Append changes = null;
+            if (!compactionPending && !store.isCompactionNeeded())
+            {
+                final Map<NBTPath, Tag<?>> values = new LinkedHashMap<>();
+                dirty.forEach(path -> values.put(path, tree.findTag(path)));
+                changes = store.append(values);
+            }
 
-            final CompoundTag parent = (CompoundTag) findParent(path);
-            parent.getValue().put(extractLeafPath(path), ret);
+            append = changes;
+            compaction = append == null ? store.compact(tree.getRoot()) : null;
+            captured = new ArrayList<>(dirty);
+            dirty.clear();
+            compactionPending = false;
         }
 
-        return ret;
+        final boolean ok = append != null ? append.run() : compaction.run();
+        synchronized (this)
+        {
+            // the changes stay pending, so a reload keeps them, and the next try rewrites everything
+            if (!ok)
+            {
+                dirty.addAll(captured);
+                compactionPending = true;
+            }
+            else if (append != null && store.isCompactionNeeded())
+            {
+                compactionPending = true;
+                saver.request();
+            }
+        }
+
+        return ok;
+    }
+
+    /**
+     * Coalesce the saves made during the given delay, call {@link #flush()} before leaving.
+     */
+    public synchronized void enableWriteBehind(final long delayMillis)
+    {
+        if (saver == null)
+        {
+            saver = new ConfigSaver(this::persist, delayMillis);
+        }
+    }
+
+    /**
+     * Write the pending changes now, if any.
+     */
+    public void flush()
+    {
+        synchronized (this)
+        {
+            saveNextBatch();
+        }
+
+        final ConfigSaver s = getSaver();
+        if (s != null)
+        {
+            s.flush();
+        }
+    }
+
+    public synchronized ConfigSaver getSaver()
+    {
+        return saver;
     }
 
-    private CompoundTag folder(final Folder path)
+    /**
+     * Reload the config when its files are changed from outside, see {@link #addChangeListener(Consumer)}.
+     */
+    public synchronized boolean enableHotReload()
     {
-        return folder(path.name().toLowerCase());
+        if (watcher == null)
+        {
+            try
+            {
+                watcher = new ConfigWatcher(store.getFiles(), this::reloadIfChanged, RELOAD_DELAY_MILLIS);
+            }
+            catch (final IOException e)
+            {
+                LOGGER.error("Unable to watch the config : {}", e.getMessage());
+                return false;
+            }
+        }
+
+        return true;
     }
 
-    private ListTag list(final Folder path, final Class<? extends Tag<?>> type)
+    /**
+     * Get told of the rooms changed by a reload, from the reload thread.
+     */
+    public void addChangeListener(final Consumer<ConfigChange> listener)
     {
-        return list(path.name().toLowerCase(), type);
+        listeners.add(listener);
     }
 
-    private void setString(final String folder, final String key, final String value)
+    /**
+     * Read the config again if its files were changed from outside, an invalid config is ignored and the current one
+     * kept. Nothing is written before the read, the changes of ours still waiting for their write are applied again on
+     * top of the new config and written after.
+     *
+     * @return true if a new config is in use
+     */
+    public boolean reloadIfChanged()
     {
-        final CompoundTag f = folder(folder);
-        f.put(new StringTag(key, value));
+        if (!store.isChangedOnDisk())
+        {
+            return false;
+        }
+
+        // no write of ours may land between the read and the replacement of the tree
+        final ConfigSaver s = getSaver();
+        final ConfigChange change = s != null ? s.exclusive(this::reload) : reload();
+        if (change == null)
+        {
+            return false;
+        }
+
+        LOGGER.info("Config reloaded from {} : {}", store.describe(), change);
+        if (!change.isEmpty())
+        {
+            for (final Consumer<ConfigChange> listener : listeners)
+            {
+                try
+                {
+                    listener.accept(change);
+                }
+                catch (final RuntimeException e)
+                {
+                    LOGGER.error("Unable to apply a config change", e);
+                }
+            }
+        }
 
-        save();
+        return true;
     }
 
-    private void setString(final Folder folder, final Key key, final String value)
+    // null if the files could not be read or are invalid
+    private synchronized ConfigChange reload()
     {
-        setString(folder.name().toLowerCase(), key.name().toLowerCase(), value);
+        final CompoundTag root = store.reload();
+        if (root == null)
+        {
+            return null;
+        }
+
+        final NBTNavigator reloaded = new NBTNavigator(root);
+        final Set<NBTPath> pending = new LinkedHashSet<>(dirty);
+        if (nextBatchPending)
+        {
+            pending.add(NEXT_BATCH);
+        }
+        for (final NBTPath path : pending)
+        {
+            reapply(reloaded, path);
+        }
+
+        final ConfigSnapshot compiled;
+        try
+        {
+            final Tag<?> rooms = reloaded.findTag(Folder.ROOMS.path);
+            if (rooms != null && !(rooms instanceof CompoundTag))
+            {
+                throw new IllegalStateException("rooms is not a folder");
+            }
+            compiled = compile(reloaded);
+        }
+        catch (final RuntimeException e)
+        {
+            LOGGER.error("Reloaded config is invalid, keeping the current one : {}", e.toString());
+            return null;
+        }
+
+        final ConfigChange change = ConfigChange.between(snapshot, compiled);
+        tree = reloaded;
+        snapshot = compiled;
+        if (saver != null && !dirty.isEmpty())
+        {
+            saver.request();
+        }
+
+        return change;
     }
 
-    private String getString(final String folder, final String key)
+    // copy our value of the path over the reloaded one
+    private void reapply(final NBTNavigator reloaded, final NBTPath path)
     {
-        final CompoundTag f = folder(folder);
-        if (f.containsKey(key))
+        final Tag<?> ours = tree.findTag(path);
+        try
         {
-            return ((StringTag) f.get(key)).getValue();
+            if (ours != null)
+            {
+                reloaded.getOrCreateCompound(path.getParent()).put(ours);
+            }
+            else
+            {
+                final CompoundTag parent = reloaded.findParent(path);
+                if (parent != null)
+                {
+                    parent.getValue().remove(path.getLeaf());
+                }
+            }
+        }
+        catch (final IllegalStateException e)
+        {
+            LOGGER.error("Unable to keep the change of {} over the reloaded config : {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Record a change, only the changed entry is written and the whole config is rewritten from time to time.
+     * With the saver the entry is written by its thread, the caller never waits for the disk.
+     */
+    private void changed(final NBTPath path)
+    {
+        if (saver != null)
+        {
+            dirty.add(path);
+            compile();
+            saver.request();
+            return;
+        }
+
+        if (store.write(path, tree.findTag(path)) && !store.isCompactionNeeded())
+        {
+            compile();
+        }
+        else
+        {
+            save();
+        }
+    }
+
+    private void compile()
+    {
+        snapshot = compile(tree);
+    }
+
+    private static ConfigSnapshot compile(final NBTNavigator nav)
+    {
+        final Tag<?> rooms = nav.findTag(Folder.ROOMS.path);
+        return ConfigSnapshot.compile(rooms instanceof CompoundTag ? (CompoundTag) rooms : null, Key.MODES.key, Key.PARAMS.key);
+    }
+
+    /**
+     * Current compiled view of the rooms, to use on the event path.
+     */
+    public ConfigSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    private static NBTPath setting(final Folder folder, final Key key)
+    {
+        return folder.path.child(key.key);
+    }
+
+    private CompoundTag folder(final Folder folder)
+    {
+        return tree.getOrCreateCompound(folder.path);
+    }
+
+    private ListTag list(final Folder folder, final Class<? extends Tag<?>> type)
+    {
+        final Tag<?> t = tree.findTag(folder.path);
+        if (t instanceof ListTag)
+        {
+            return (ListTag) t;
+        }
+
+        final ListTag ret = new ListTag(folder.path.getLeaf(), type, new ArrayList<>());
+        tree.getOrCreateCompound(folder.path.getParent()).put(ret);
+
+        return ret;
+    }
+
+    private void writeString(final NBTPath path, final String value)
+    {
+        tree.getOrCreateCompound(path.getParent()).put(new StringTag(path.getLeaf(), value));
+
+        changed(path);
+    }
+
+    private String readString(final NBTPath path)
+    {
+        final Tag<?> t = tree.findTag(path);
+        if (t instanceof StringTag)
+        {
+            return ((StringTag) t).getValue();
         }
 
         return "";
     }
 
-    private String getString(final Folder folder, final Key key)
+    private void writeInteger(final NBTPath path, final int value)
     {
-        return getString(folder.name().toLowerCase(), key.name().toLowerCase());
+        tree.getOrCreateCompound(path.getParent()).put(new IntTag(path.getLeaf(), value));
+
+        changed(path);
     }
 
-    public String getHost()
+    private int readInteger(final NBTPath path, final int defaultValue)
     {
-        return getString(Folder.CONNECTION, Key.HOST);
+        final Tag<?> t = tree.findTag(path);
+        if (t instanceof IntTag)
+        {
+            return ((IntTag) t).getValue();
+        }
+
+        return defaultValue;
     }
 
-    public void setHost(final String host)
+    public synchronized String getHost()
     {
-        setString(Folder.CONNECTION, Key.HOST, host);
+        return readString(HOST);
     }
 
-    public void setPassword(final String password)
+    public synchronized void setHost(final String host)
     {
-        setString(Folder.CONNECTION, Key.PASSWORD, password);
+        writeString(HOST, host);
     }
 
-    public String getPassword()
+    public synchronized void setPassword(final String password)
     {
-        return getString(Folder.CONNECTION, Key.PASSWORD);
+        writeString(PASSWORD, password);
     }
 
-    public void setUsername(final String username)
+    public synchronized String getPassword()
     {
-        setString(Folder.CONNECTION, Key.USERNAME, username);
+        return readString(PASSWORD);
     }
 
-    public String getUsername()
+    public synchronized void setUsername(final String username)
     {
-        return getString(Folder.CONNECTION, Key.USERNAME);
+        writeString(USERNAME, username);
     }
 
-    public void setAccessToken(final String token)
+    public synchronized String getUsername()
     {
-        setString(Folder.CONNECTION, Key.ACCESSTOKEN, token);
+        return readString(USERNAME);
     }
 
-    public String getAccessToken()
+    public synchronized void setAccessToken(final String token)
     {
-        return getString(Folder.CONNECTION, Key.ACCESSTOKEN);
+        writeString(ACCESS_TOKEN, token);
     }
 
-    public void setDeviceId(final String deviceId)
+    public synchronized String getAccessToken()
     {
-        setString(Folder.CONNECTION, Key.DEVICEID, deviceId);
+        return readString(ACCESS_TOKEN);
     }
 
-    public String getDeviceId()
+    public synchronized void setDeviceId(final String deviceId)
     {
-        return getString(Folder.CONNECTION, Key.DEVICEID);
+        writeString(DEVICE_ID, deviceId);
     }
 
-    public void setUserId(final String userId)
+    public synchronized String getDeviceId()
     {
-        setString(Folder.CONNECTION, Key.USERID, userId);
+        return readString(DEVICE_ID);
     }
 
-    public String getUserId()
+    public synchronized void setUserId(final String userId)
     {
-        return getString(Folder.CONNECTION, Key.USERID);
+        writeString(USER_ID, userId);
     }
 
-    public void setPrompt(final String prompt)
+    public synchronized String getUserId()
     {
-        setString(Folder.COMMANDS, Key.PROMPT, prompt);
+        return readString(USER_ID);
     }
 
-    public String getPrompt()
+    public synchronized void setPrompt(final String prompt)
     {
-        return getString(Folder.COMMANDS, Key.PROMPT);
+        writeString(PROMPT, prompt);
     }
 
-    public void addRoom(final String room)
+    public synchronized String getPrompt()
+    {
+        return readString(PROMPT);
+    }
+
+    public synchronized int getCommandTimeout()
+    {
+        return readInteger(COMMAND_TIMEOUT, DEFAULT_COMMAND_TIMEOUT_SECONDS);
+    }
+
+    public synchronized void setCommandTimeout(final int timeoutSeconds)
+    {
+        writeInteger(COMMAND_TIMEOUT, timeoutSeconds);
+    }
+
+    public synchronized String getSyncFilterId()
+    {
+        return readString(FILTER_ID);
+    }
+
+    public synchronized String getSyncFilterFingerprint()
+    {
+        return readString(FILTER_FINGERPRINT);
+    }
+
+    public synchronized void setSyncFilter(final String filterId, final String fingerprint)
+    {
+        final CompoundTag f = folder(Folder.SYNC);
+        f.put(new StringTag(FILTER_ID.getLeaf(), filterId));
+        f.put(new StringTag(FILTER_FINGERPRINT.getLeaf(), fingerprint));
+
+        changed(Folder.SYNC.path);
+    }
+
+    public synchronized int getRoomLanes()
+    {
+        return readInteger(LANES, DEFAULT_ROOM_LANES);
+    }
+
+    public synchronized void setRoomLanes(final int lanes)
+    {
+        writeInteger(LANES, lanes);
+    }
+
+    public synchronized int getReceiptInterval()
+    {
+        return readInteger(RECEIPT_INTERVAL, DEFAULT_RECEIPT_INTERVAL_MILLIS);
+    }
+
+    public synchronized void setReceiptInterval(final int intervalMillis)
+    {
+        writeInteger(RECEIPT_INTERVAL, intervalMillis);
+    }
+
+    public synchronized int getOutboundConcurrency()
+    {
+        return readInteger(OUTBOUND_CONCURRENCY, DEFAULT_OUTBOUND_CONCURRENCY);
+    }
+
+    public synchronized void setOutboundConcurrency(final int concurrency)
+    {
+        writeInteger(OUTBOUND_CONCURRENCY, concurrency);
+    }
+
+    public synchronized int getSaveDelay()
+    {
+        return readInteger(SAVE_DELAY, DEFAULT_SAVE_DELAY_MILLIS);
+    }
+
+    public synchronized void setSaveDelay(final int delayMillis)
+    {
+        writeInteger(SAVE_DELAY, delayMillis);
+    }
+
+    public synchronized String getNextBatch()
+    {
+        return readString(NEXT_BATCH);
+    }
+
+    /**
+     * Keep the sync token, it is written once {@link #NEXT_BATCH_SAVE_INTERVAL_MILLIS} has passed since the last write or
+     * on {@link #flush()}.
+     */
+    public synchronized void setNextBatch(final String nextBatch)
+    {
+        tree.getOrCreateCompound(NEXT_BATCH.getParent()).put(new StringTag(NEXT_BATCH.getLeaf(), nextBatch));
+        nextBatchPending = true;
+
+        if (System.nanoTime() - nextBatchSavedNanos >= TimeUnit.MILLISECONDS.toNanos(NEXT_BATCH_SAVE_INTERVAL_MILLIS))
+        {
+            saveNextBatch();
+        }
+    }
+
+    private void saveNextBatch()
+    {
+        if (nextBatchPending)
+        {
+            nextBatchPending = false;
+            nextBatchSavedNanos = System.nanoTime();
+            changed(NEXT_BATCH);
+        }
+    }
+
+    public synchronized void addRoom(final String room)
     {
         final CompoundTag f = folder(Folder.ROOMS);
         f.put(new CompoundTag(room));
 
-        save();
+        changed(Folder.ROOMS.path.child(room));
     }
 
-    public void delRoom(final String room)
+    public synchronized void delRoom(final String room)
     {
         final CompoundTag f = folder(Folder.ROOMS);
         f.getValue().remove(room);
 
-        save();
+        changed(Folder.ROOMS.path.child(room));
     }
 
-    public CompoundTag getRoom(final String room, final boolean addIfMissing)
+    public synchronized CompoundTag getRoom(final String room, final boolean addIfMissing)
     {
         final CompoundTag f = folder(Folder.ROOMS);
         if (!f.containsKey(room) && addIfMissing)
@@ -281,21 +758,20 @@ public class Config extends NBTNavigator
         return (CompoundTag) f.get(room);
     }
 
-    public void clearRooms()
+    public synchronized void clearRooms()
     {
         final CompoundTag f = folder(Folder.ROOMS);
         f.getValue().clear();
 
-        save();
+        changed(Folder.ROOMS.path);
     }
 
     public List<String> getRooms()
     {
-        final CompoundTag f = folder(Folder.ROOMS);
-        return f.getValue().values().stream().map(Tag::getName).collect(Collectors.toList());
+        return snapshot.getRooms();
     }
 
-    public void setRoomModes(final String room, final RoomMode... modes)
+    public synchronized void setRoomModes(final String room, final RoomMode... modes)
     {
         final CompoundTag r = getRoom(room, true);
 
@@ -305,42 +781,42 @@ public class Config extends NBTNavigator
             mModes.add(new StringTag(null, str.name()));
         }
 
-        final ListTag lModes = new ListTag(Key.MODES.name().toLowerCase(), StringTag.class, mModes);
+        final ListTag lModes = new ListTag(Key.MODES.key, StringTag.class, mModes);
         r.put(lModes);
 
-        save();
+        changed(Folder.ROOMS.path.child(room));
     }
 
-    public void addRoomMode(final String room, final RoomMode mode)
+    public synchronized void addRoomMode(final String room, final RoomMode mode)
     {
         final CompoundTag r = getRoom(room, false);
         if(r != null)
         {
-            if(!r.containsKey(Key.MODES.name().toLowerCase()))
+            if(!r.containsKey(Key.MODES.key))
             {
                 // add empty room list
-                final ListTag lModes = new ListTag(Key.MODES.name().toLowerCase(), StringTag.class, new ArrayList<>());
+                final ListTag lModes = new ListTag(Key.MODES.key, StringTag.class, new ArrayList<>());
                 r.put(lModes);
             }
 
-            final ListTag lModes = (ListTag) r.get(Key.MODES.name().toLowerCase());
+            final ListTag lModes = (ListTag) r.get(Key.MODES.key);
             if(lModes.getValue().stream().map(t -> (StringTag)t).noneMatch(t -> t.getValue().equals(mode.name())))
             {
                 lModes.getValue().add(new StringTag(null, mode.name()));
             }
 
-            save();
+            changed(Folder.ROOMS.path.child(room));
         }
     }
 
-    public void delRoomMode(final String room, final RoomMode mode)
+    public synchronized void delRoomMode(final String room, final RoomMode mode)
     {
         final CompoundTag r = getRoom(room, false);
         if(r != null)
         {
-            if(r.containsKey(Key.MODES.name().toLowerCase()))
+            if(r.containsKey(Key.MODES.key))
             {
-                final ListTag lModes = (ListTag) r.get(Key.MODES.name().toLowerCase());
+                final ListTag lModes = (ListTag) r.get(Key.MODES.key);
                 for(final Tag<?> t : lModes.getValue())
                 {
                     final StringTag tt = (StringTag) t;
@@ -351,17 +827,17 @@ public class Config extends NBTNavigator
                     }
                 }
 
-                save();
+                changed(Folder.ROOMS.path.child(room));
             }
         }
     }
 
-    public List<String> getRoomModes(final String room)
+    public synchronized List<String> getRoomModes(final String room)
     {
         final CompoundTag r = getRoom(room, false);
         if(r != null)
         {
-            final ListTag lModes = (ListTag) r.getValue().get(Key.MODES.name().toLowerCase());
+            final ListTag lModes = (ListTag) r.getValue().get(Key.MODES.key);
             if(lModes != null)
             {
                 return lModes.getValue().stream().map(t -> (StringTag) t).map(StringTag::getValue).collect(Collectors.toList());
@@ -373,20 +849,10 @@ public class Config extends NBTNavigator
 
     public boolean isRoomModeEnabled(final String room, final RoomMode mode)
     {
-        final CompoundTag r = getRoom(room, false);
-        if(r != null)
-        {
-            final ListTag lModes = (ListTag) r.getValue().get(Key.MODES.name().toLowerCase());
-            if(lModes != null)
-            {
-                return lModes.getValue().stream().map(t -> (StringTag) t).anyMatch(t -> t.getValue().equals(mode.name()));
-            }
-        }
-
-        return false;
+        return snapshot.isRoomModeEnabled(room, mode);
     }
 
-    public void grant(final String userId)
+    public synchronized void grant(final String userId)
     {
         final ListTag l = list(Folder.ADMINS, StringTag.class);
         if(l.getValue().stream().map(t -> (StringTag)t).noneMatch(t -> t.getValue().equals(userId)))
@@ -394,10 +860,10 @@ public class Config extends NBTNavigator
             l.getValue().add(new StringTag(null, userId));
         }
 
-        save();
+        changed(Folder.ADMINS.path);
     }
 
-    public void revoke(final String userId)
+    public synchronized void revoke(final String userId)
     {
         final ListTag l = list(Folder.ADMINS, StringTag.class);
         for(final Tag<?> t : l.getValue())
@@ -410,22 +876,22 @@ public class Config extends NBTNavigator
             }
         }
 
-        save();
+        changed(Folder.ADMINS.path);
     }
 
-    public List<String> getAdmins()
+    public synchronized List<String> getAdmins()
     {
         final ListTag l = list(Folder.ADMINS, StringTag.class);
         return l.getValue().stream().map(t -> (StringTag)t).map(StringTag::getValue).collect(Collectors.toList());
     }
 
-    public boolean isAdmin(final String userId)
+    public synchronized boolean isAdmin(final String userId)
     {
         final ListTag l = list(Folder.ADMINS, StringTag.class);
         return l.getValue().stream().map(t -> (StringTag)t).anyMatch(t -> t.getValue().equals(userId));
     }
 
-    public void addServer(final String server)
+    public synchronized void addServer(final String server)
     {
         final ListTag l = list(Folder.SERVERS, StringTag.class);
         if(l.getValue().stream().map(t -> (StringTag)t).noneMatch(t -> t.getValue().equals(server)))
@@ -433,10 +899,10 @@ public class Config extends NBTNavigator
             l.getValue().add(new StringTag(null, server));
         }
 
-        save();
+        changed(Folder.SERVERS.path);
     }
 
-    public void delServer(final String server)
+    public synchronized void delServer(final String server)
     {
         final ListTag l = list(Folder.SERVERS, StringTag.class);
         for(final Tag<?> t : l.getValue())
@@ -449,75 +915,59 @@ public class Config extends NBTNavigator
             }
         }
 
-        save();
+        changed(Folder.SERVERS.path);
     }
 
-    public List<String> getServers()
+    public synchronized List<String> getServers()
     {
         final ListTag l = list(Folder.SERVERS, StringTag.class);
         return l.getValue().stream().map(t -> (StringTag)t).map(StringTag::getValue).collect(Collectors.toList());
     }
 
-    public void setVar(final String var, final String payload)
+    public synchronized void setVar(final String var, final String payload)
     {
         final CompoundTag f = folder(Folder.VARS);
         f.put(new StringTag(var, payload));
 
-        save();
+        changed(Folder.VARS.path.child(var));
     }
 
-    public void delVar(final String var)
+    public synchronized void delVar(final String var)
     {
         final CompoundTag f = folder(Folder.VARS);
         f.getValue().remove(var);
 
-        save();
+        changed(Folder.VARS.path.child(var));
     }
 
-    public Map<String, String> getVars()
+    public synchronized Map<String, String> getVars()
     {
         final CompoundTag f = folder(Folder.VARS);
         return f.getValue().values().stream().collect(Collectors.toMap(Tag::getName, e -> (String)e.getValue()));
     }
 
-    public void setRoomModeParams(final String room, final RoomMode mode, final String params)
+    public synchronized void setRoomModeParams(final String room, final RoomMode mode, final String params)
     {
         final CompoundTag r = getRoom(room, false);
         if(r != null)
         {
-            if(!r.containsKey(Key.PARAMS.name().toLowerCase()))
+            if(!r.containsKey(Key.PARAMS.key))
             {
                 // add empty params root
-                final CompoundTag lParams = new CompoundTag(Key.PARAMS.name().toLowerCase());
+                final CompoundTag lParams = new CompoundTag(Key.PARAMS.key);
                 r.put(lParams);
             }
 
-            final CompoundTag lParams = (CompoundTag) r.get(Key.PARAMS.name().toLowerCase());
+            final CompoundTag lParams = (CompoundTag) r.get(Key.PARAMS.key);
             lParams.put(mode.name(), new StringTag(mode.name(), params));
 
-            save();
+            changed(Folder.ROOMS.path.child(room));
         }
     }
 
     public String getParam(final String room, final RoomMode mode)
     {
-        final CompoundTag r = getRoom(room, false);
-        if(r != null)
-        {
-            if(r.containsKey(Key.PARAMS.name().toLowerCase()))
-            {
-                final CompoundTag lParams = (CompoundTag) r.get(Key.PARAMS.name().toLowerCase());
-                if(lParams != null && !lParams.isEmpty())
-                {
-                    if(lParams.containsKey(mode.name()))
-                    {
-                        return ((StringTag)lParams.get(mode.name())).getValue();
-                    }
-                }
-            }
-        }
-
-        return null;
+        return snapshot.getParam(room, mode);
     }
 
     public static void main(final String[] args)
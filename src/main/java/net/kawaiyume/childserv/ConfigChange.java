@@ -0,0 +1,177 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  ConfigChange.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import net.kawaiyume.childserv.Config.RoomMode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Difference between two snapshots of the rooms, raised when the config is changed from outside.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public final class ConfigChange
+{
+    private final ConfigSnapshot before;
+    private final ConfigSnapshot after;
+
+    private final List<String> addedRooms;
+    private final List<String> removedRooms;
+    private final List<String> changedRooms;
+
+    private ConfigChange(final ConfigSnapshot before, final ConfigSnapshot after, final List<String> addedRooms, final List<String> removedRooms, final List<String> changedRooms)
+    {
+        this.before = before;
+        this.after = after;
+        this.addedRooms = Collections.unmodifiableList(addedRooms);
+        this.removedRooms = Collections.unmodifiableList(removedRooms);
+        this.changedRooms = Collections.unmodifiableList(changedRooms);
+    }
+
+    static ConfigChange between(final ConfigSnapshot before, final ConfigSnapshot after)
+    {
+        final List<String> added = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        final List<String> changed = new ArrayList<>();
+
+        for (final String room : after.getRooms())
+        {
+            if (!before.isRoom(room))
+            {
+                added.add(room);
+            }
+            else if (!before.getRoomModes(room).equals(after.getRoomModes(room)) || !sameParams(before, after, room))
+            {
+                changed.add(room);
+            }
+        }
+
+        for (final String room : before.getRooms())
+        {
+            if (!after.isRoom(room))
+            {
+                removed.add(room);
+            }
+        }
+
+        return new ConfigChange(before, after, added, removed, changed);
+    }
+
+    private static boolean sameParams(final ConfigSnapshot before, final ConfigSnapshot after, final String room)
+    {
+        for (final RoomMode mode : RoomMode.values())
+        {
+            if (!Objects.equals(before.getParam(room, mode), after.getParam(room, mode)))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public ConfigSnapshot getBefore()
+    {
+        return before;
+    }
+
+    public ConfigSnapshot getAfter()
+    {
+        return after;
+    }
+
+    public List<String> getAddedRooms()
+    {
+        return addedRooms;
+    }
+
+    public List<String> getRemovedRooms()
+    {
+        return removedRooms;
+    }
+
+    /**
+     * Rooms kept whose modes or params changed.
+     */
+    public List<String> getChangedRooms()
+    {
+        return changedRooms;
+    }
+
+    /**
+     * Modes enabled or disabled on the given room, an added or removed room counting all its modes.
+     */
+    public Set<RoomMode> getToggledModes(final String room)
+    {
+        final Set<RoomMode> toggled = EnumSet.noneOf(RoomMode.class);
+        toggled.addAll(before.getRoomModes(room));
+        toggled.addAll(after.getRoomModes(room));
+
+        final Set<RoomMode> kept = EnumSet.noneOf(RoomMode.class);
+        kept.addAll(before.getRoomModes(room));
+        kept.retainAll(after.getRoomModes(room));
+        toggled.removeAll(kept);
+
+        return toggled;
+    }
+
+    /**
+     * The given mode was enabled or disabled on any room.
+     */
+    public boolean isModeToggled(final RoomMode mode)
+    {
+        return !new HashSet<>(before.getRooms(mode)).equals(new HashSet<>(after.getRooms(mode)));
+    }
+
+    public boolean isEmpty()
+    {
+        return addedRooms.isEmpty() && removedRooms.isEmpty() && changedRooms.isEmpty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "+" + addedRooms.size() + " rooms, -" + removedRooms.size() + " rooms, " + changedRooms.size() + " changed";
+    }
+}
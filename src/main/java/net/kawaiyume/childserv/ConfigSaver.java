@@ -0,0 +1,206 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  ConfigSaver.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Write-behind saving of the config, the changes made during the delay are written all at once from a background thread.
+ * A failed write is tried again after a while, the changes stay pending until written.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class ConfigSaver
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigSaver.class);
+
+    // wait before trying a failed write again
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    private final BooleanSupplier writer;
+    private final long delayMillis;
+
+    private final ScheduledExecutorService executor;
+
+    // a write is scheduled and not started yet
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final Object writeLock = new Object();
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong lastNanos = new AtomicLong();
+
+    public ConfigSaver(final BooleanSupplier writer, final long delayMillis)
+    {
+        this.writer = writer;
+        this.delayMillis = Math.max(0, delayMillis);
+
+        executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            final Thread t = new Thread(r, "ConfigSaver");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Ask for a save, only the first request of the delay window schedules a write.
+     */
+    public void request()
+    {
+        requested.incrementAndGet();
+        schedule(delayMillis);
+    }
+
+    private void schedule(final long delay)
+    {
+        if (pending.compareAndSet(false, true))
+        {
+            try
+            {
+                executor.schedule(this::writeIfPending, delay, TimeUnit.MILLISECONDS);
+            }
+            catch (final RejectedExecutionException e)
+            {
+                // closed, the last flush has already been done
+                pending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Write the pending changes now, on the calling thread.
+     */
+    public void flush()
+    {
+        writeIfPending();
+    }
+
+    /**
+     * Run the task while no write is on the way, the writes due meanwhile wait for it.
+     */
+    public <T> T exclusive(final Supplier<T> task)
+    {
+        synchronized (writeLock)
+        {
+            return task.get();
+        }
+    }
+
+    public void close()
+    {
+        flush();
+        executor.shutdown();
+    }
+
+    private void writeIfPending()
+    {
+        synchronized (writeLock)
+        {
+            // cleared before writing, so a change made during the write schedules another one
+            if (!pending.getAndSet(false))
+            {
+                return;
+            }
+
+            final long start = System.nanoTime();
+            boolean ok = false;
+            try
+            {
+                ok = writer.getAsBoolean();
+            }
+            catch (final RuntimeException e)
+            {
+                LOGGER.error("Error while saving the config", e);
+            }
+            finally
+            {
+                final long elapsed = System.nanoTime() - start;
+                lastNanos.set(elapsed);
+                totalNanos.addAndGet(elapsed);
+            }
+
+            if (ok)
+            {
+                saved.incrementAndGet();
+            }
+            else
+            {
+                failed.incrementAndGet();
+                LOGGER.error("Unable to save the config, trying again in {} ms", RETRY_DELAY_MILLIS);
+                schedule(RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    public long getRequested()
+    {
+        return requested.get();
+    }
+
+    public long getSaved()
+    {
+        return saved.get();
+    }
+
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    public long getLastSaveMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(lastNanos.get());
+    }
+
+    public long getTotalSaveMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+    }
+}
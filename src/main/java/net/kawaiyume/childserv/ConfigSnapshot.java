@@ -0,0 +1,190 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  ConfigSnapshot.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import net.kawaiyume.childserv.Config.RoomMode;
+import org.jnbt.CompoundTag;
+import org.jnbt.ListTag;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable view of the rooms part of the config, compiled after each change.
+ * Reading it never touches the NBT tree, so it is safe and cheap from any thread.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public final class ConfigSnapshot
+{
+    public static final ConfigSnapshot EMPTY = new ConfigSnapshot(Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap());
+
+    private final List<String>                          rooms;
+    private final Set<String>                           roomSet;
+    private final Map<String, Set<RoomMode>>            modes;
+    private final Map<String, Map<RoomMode, String>>    params;
+    private final Map<RoomMode, List<String>>           roomsByMode;
+
+    private ConfigSnapshot(final List<String> rooms, final Map<String, Set<RoomMode>> modes, final Map<String, Map<RoomMode, String>> params)
+    {
+        this.rooms = Collections.unmodifiableList(rooms);
+        this.roomSet = Collections.unmodifiableSet(new HashSet<>(rooms));
+        this.modes = Collections.unmodifiableMap(modes);
+        this.params = Collections.unmodifiableMap(params);
+
+        final Map<RoomMode, List<String>> byMode = new EnumMap<>(RoomMode.class);
+        for (final RoomMode mode : RoomMode.values())
+        {
+            final List<String> l = new ArrayList<>();
+            for (final String room : rooms)
+            {
+                final Set<RoomMode> m = modes.get(room);
+                if (m != null && m.contains(mode))
+                {
+                    l.add(room);
+                }
+            }
+            byMode.put(mode, Collections.unmodifiableList(l));
+        }
+        this.roomsByMode = Collections.unmodifiableMap(byMode);
+    }
+
+    /**
+     * Compile the snapshot from the rooms folder of the config, null meaning no room at all.
+     */
+    static ConfigSnapshot compile(final CompoundTag roomsFolder, final String modesKey, final String paramsKey)
+    {
+        if (roomsFolder == null || roomsFolder.isEmpty())
+        {
+            return EMPTY;
+        }
+
+        final List<String> rooms = new ArrayList<>();
+        final Map<String, Set<RoomMode>> modes = new HashMap<>();
+        final Map<String, Map<RoomMode, String>> params = new HashMap<>();
+
+        for (final Tag<?> t : roomsFolder.getValue().values())
+        {
+            final String room = t.getName();
+            rooms.add(room);
+
+            final Set<RoomMode> roomModes = EnumSet.noneOf(RoomMode.class);
+            final Map<RoomMode, String> roomParams = new EnumMap<>(RoomMode.class);
+            if (t instanceof CompoundTag)
+            {
+                final Tag<?> lModes = ((CompoundTag) t).get(modesKey);
+                if (lModes instanceof ListTag)
+                {
+                    for (final Tag<?> m : ((ListTag) lModes).getValue())
+                    {
+                        final RoomMode mode = RoomMode.find(((StringTag) m).getValue());
+                        if (mode != null)
+                        {
+                            roomModes.add(mode);
+                        }
+                    }
+                }
+
+                final Tag<?> lParams = ((CompoundTag) t).get(paramsKey);
+                if (lParams instanceof CompoundTag)
+                {
+                    for (final Tag<?> p : ((CompoundTag) lParams).getValue().values())
+                    {
+                        final RoomMode mode = RoomMode.find(p.getName());
+                        if (mode != null && p instanceof StringTag)
+                        {
+                            roomParams.put(mode, ((StringTag) p).getValue());
+                        }
+                    }
+                }
+            }
+
+            modes.put(room, Collections.unmodifiableSet(roomModes));
+            params.put(room, Collections.unmodifiableMap(roomParams));
+        }
+
+        return new ConfigSnapshot(rooms, modes, params);
+    }
+
+    /**
+     * Configured rooms, in config order.
+     */
+    public List<String> getRooms()
+    {
+        return rooms;
+    }
+
+    /**
+     * Configured rooms having the given mode enabled, in config order.
+     */
+    public List<String> getRooms(final RoomMode mode)
+    {
+        return roomsByMode.get(mode);
+    }
+
+    public boolean isRoom(final String room)
+    {
+        return roomSet.contains(room);
+    }
+
+    public Set<RoomMode> getRoomModes(final String room)
+    {
+        final Set<RoomMode> m = modes.get(room);
+        return m != null ? m : Collections.emptySet();
+    }
+
+    public boolean isRoomModeEnabled(final String room, final RoomMode mode)
+    {
+        final Set<RoomMode> m = modes.get(room);
+        return m != null && m.contains(mode);
+    }
+
+    public String getParam(final String room, final RoomMode mode)
+    {
+        final Map<RoomMode, String> p = params.get(room);
+        return p != null ? p.get(mode) : null;
+    }
+}
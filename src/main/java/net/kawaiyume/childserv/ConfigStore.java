@@ -0,0 +1,211 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  ConfigStore.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import org.jnbt.CompoundTag;
+import org.jnbt.Tag;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of the config tree. The tree is loaded once and changed in place by {@link Config}, the store is told about
+ * each changed path and rewrites everything from time to time.
+ * The config calls {@link #load()}, {@link #write(NBTPath, Tag)}, {@link #append(Map)} and {@link #compact(CompoundTag)}
+ * under its lock, {@link Append#run()} and {@link Compaction#run()} are called outside of it.
+ * A store remembers the state of its files after its own writes, so a change made by someone else can be told apart
+ * and picked up with {@link #reload()}.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public interface ConfigStore
+{
+    // system property selecting the store, see forName
+    String STORE_PROPERTY = "childserv.config.store";
+
+    String NBT = "nbt";
+    String LOG = "log";
+
+    /**
+     * Open the store of the given type, in the working directory.
+     */
+    static ConfigStore forName(final String name)
+    {
+        if (LOG.equalsIgnoreCase(name))
+        {
+            return new LogConfigStore(new File("config.log"));
+        }
+        if (name == null || name.isEmpty() || NBT.equalsIgnoreCase(name))
+        {
+            return new NBTConfigStore(new File("config.dat"));
+        }
+
+        throw new IllegalArgumentException("Unknown config store : " + name);
+    }
+
+    /**
+     * Open the store selected by the system property, the nbt one by default.
+     */
+    static ConfigStore fromSystemProperty()
+    {
+        return forName(System.getProperty(STORE_PROPERTY, NBT));
+    }
+
+    /**
+     * Read the whole tree, an empty root if there is nothing stored yet.
+     */
+    CompoundTag load();
+
+    /**
+     * Persist the new value of the tag at the given path, null for a removal.
+     *
+     * @return false if the change could not be written alone, a compaction is then needed
+     */
+    boolean write(NBTPath path, Tag<?> tag);
+
+    /**
+     * Capture the new values of the changed paths, null for a removal, the returned work persists them without needing the
+     * config lock.
+     *
+     * @return null if the changes could not be written alone, a compaction is then needed
+     */
+    Append append(Map<NBTPath, Tag<?>> changes);
+
+    /**
+     * Enough changes have been written for a full rewrite to be worth it.
+     */
+    boolean isCompactionNeeded();
+
+    /**
+     * Capture the tree to fully rewrite it, the returned work writes it without needing the config lock.
+     */
+    Compaction compact(CompoundTag root);
+
+    /**
+     * The files holding the config, to watch them.
+     */
+    List<File> getFiles();
+
+    /**
+     * The files have been changed by someone else since the store last read or wrote them.
+     */
+    boolean isChangedOnDisk();
+
+    /**
+     * Read the whole tree again after an outside change, without repairing or rewriting anything.
+     *
+     * @return null if the files can't be read, the current tree has then to be kept
+     */
+    CompoundTag reload();
+
+    /**
+     * Where the config is stored, for the logs.
+     */
+    String describe();
+
+    /**
+     * Size and modification time of a file, enough to notice a change.
+     */
+    static long stamp(final File file)
+    {
+        return 31 * file.length() + file.lastModified();
+    }
+
+    /**
+     * State of each file of a store after its last read or write. A write only stamps the file it wrote, and only if no one
+     * else had changed that file before, so a change made by someone else is never taken for one of ours.
+     */
+    final class Stamps
+    {
+        private final Map<File, Long> stamps = new HashMap<>();
+
+        /**
+         * After a read, the files are as we know them.
+         */
+        public synchronized void reset(final List<File> files)
+        {
+            stamps.clear();
+            files.forEach(f -> stamps.put(f, stamp(f)));
+        }
+
+        /**
+         * To call before writing the file, false if it was changed by someone else since our last read or write.
+         */
+        public synchronized boolean isOurs(final File file)
+        {
+            final Long known = stamps.get(file);
+            return known != null && known == stamp(file);
+        }
+
+        /**
+         * To call after writing the file, with what {@link #isOurs(File)} told before the write.
+         */
+        public synchronized void wrote(final File file, final boolean wasOurs)
+        {
+            if (wasOurs)
+            {
+                stamps.put(file, stamp(file));
+            }
+        }
+
+        public synchronized boolean isChanged()
+        {
+            for (final Map.Entry<File, Long> e : stamps.entrySet())
+            {
+                if (stamp(e.getKey()) != e.getValue())
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    interface Append
+    {
+        boolean run();
+    }
+
+    @FunctionalInterface
+    interface Compaction
+    {
+        boolean run();
+    }
+}
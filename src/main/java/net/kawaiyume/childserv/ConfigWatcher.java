@@ -0,0 +1,183 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  ConfigWatcher.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch the files of the config, the events of a burst of writes are coalesced into a single call of the handler,
+ * made from a background thread once the files are quiet for the delay : each event pushes the call back.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class ConfigWatcher
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigWatcher.class);
+
+    private final Runnable handler;
+    private final long delayMillis;
+
+    private final WatchService watchService;
+    private final Set<String> names = new HashSet<>();
+
+    private final ScheduledExecutorService executor;
+    private final Thread thread;
+
+    // the call of the handler scheduled by the last event, cancelled by the next one
+    private ScheduledFuture<?> scheduled;
+
+    /**
+     * The files are expected in the same directory, the one of the first file is watched.
+     */
+    public ConfigWatcher(final List<File> files, final Runnable handler, final long delayMillis) throws IOException
+    {
+        this.handler = handler;
+        this.delayMillis = Math.max(0, delayMillis);
+
+        final Path dir = files.get(0).getAbsoluteFile().getParentFile().toPath();
+        for (final File f : files)
+        {
+            names.add(f.getName());
+        }
+
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            final Thread t = new Thread(r, "ConfigReload");
+            t.setDaemon(true);
+            return t;
+        });
+
+        thread = new Thread(this::watch, "ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+
+        LOGGER.info("Watching {} in {}", names, dir);
+    }
+
+    private void watch()
+    {
+        while (true)
+        {
+            final WatchKey key;
+            try
+            {
+                key = watchService.take();
+            }
+            catch (final InterruptedException | ClosedWatchServiceException e)
+            {
+                return;
+            }
+
+            boolean relevant = false;
+            for (final WatchEvent<?> event : key.pollEvents())
+            {
+                // an overflow may hide any change
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || names.contains(((Path) event.context()).getFileName().toString()))
+                {
+                    relevant = true;
+                }
+            }
+
+            if (relevant)
+            {
+                reschedule();
+            }
+
+            if (!key.reset())
+            {
+                LOGGER.error("The config directory is no longer watched");
+                return;
+            }
+        }
+    }
+
+    private synchronized void reschedule()
+    {
+        // a call already running is left to finish, the new one runs after it
+        if (scheduled != null)
+        {
+            scheduled.cancel(false);
+        }
+        scheduled = executor.schedule(this::fire, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void fire()
+    {
+        try
+        {
+            handler.run();
+        }
+        catch (final RuntimeException e)
+        {
+            LOGGER.error("Unable to handle a change of the config files", e);
+        }
+    }
+
+    public void close()
+    {
+        try
+        {
+            watchService.close();
+        }
+        catch (final IOException e)
+        {
+            LOGGER.error("Unable to close the config watcher : {}", e.getMessage());
+        }
+        thread.interrupt();
+        executor.shutdown();
+    }
+}
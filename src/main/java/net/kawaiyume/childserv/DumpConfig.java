@@ -37,15 +37,53 @@
 package net.kawaiyume.childserv;
 
 import org.jnbt.CompoundTag;
+import org.jnbt.Tag;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 /**
+ * Print the config, or only the tag at the path given as argument, like rooms/!room:matrix.org
+ *
  * @author iXô (ixo@kawaiyume.net)
  */
 public class DumpConfig
 {
-	public static void main(final String[] args)
+	public static void main(final String[] args) throws IOException
+	{
+		final ConfigStore store = ConfigStore.fromSystemProperty();
+		if(args.length == 0)
+		{
+			// through the store, so the changes still in the journal are shown too
+			final CompoundTag root = store.load();
+			System.out.println(root);
+			return;
+		}
+
+		final String path = args[0];
+		final Tag<?> tag = isFileUpToDate(store) ? readInPlace(store.getFiles().get(0), path) : new NBTNavigator(store.load()).findTag(path);
+		System.out.println(tag != null ? tag : path + " not found");
+	}
+
+	/**
+	 * The nbt file alone holds the whole config when its journal is empty
+	 */
+	private static boolean isFileUpToDate(final ConfigStore store)
+	{
+		if(!(store instanceof NBTConfigStore))
+		{
+			return false;
+		}
+
+		final List<File> files = store.getFiles();
+		return files.get(0).isFile() && files.subList(1, files.size()).stream().allMatch(f -> f.length() == 0);
+	}
+
+	// only the compounds on the way are indexed and only the asked tag is decoded
+	private static Tag<?> readInPlace(final File file, final String path) throws IOException
 	{
-		final CompoundTag root = NBTHelper.readFile("config.dat");
-		System.out.println(root);
+		final NBTLazyNavigator navigator = new NBTLazyNavigator(file);
+		return path.isEmpty() ? navigator.getCompound(path) : navigator.findTag(path);
 	}
 }
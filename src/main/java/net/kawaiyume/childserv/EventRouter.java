@@ -0,0 +1,170 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  EventRouter.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import io.github.ma1uta.matrix.event.Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Route the timeline events of a room to the handlers registered for their type and for the kind of room, each event is
+ * looked up once in a table built at registration time.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class EventRouter
+{
+    public enum RoomScope
+    {
+        // a room from the config
+        WATCHED,
+        // a direct chat opened to welcome a new member
+        WELCOME
+    }
+
+    @FunctionalInterface
+    public interface Handler
+    {
+        void handle(String roomId, Event<?> event);
+    }
+
+    private static final Registration[] NONE = new Registration[0];
+
+    // per scope : event type -> handlers for this type
+    private final List<Map<String, Registration[]>> byType = new ArrayList<>();
+
+    // per scope : handlers for every event type
+    private final List<Registration[]> anyType = new ArrayList<>();
+
+    private final Map<String, Registration> registrations = new LinkedHashMap<>();
+
+    public EventRouter()
+    {
+        for (int cpt = 0; cpt < RoomScope.values().length; cpt++)
+        {
+            byType.add(new HashMap<>());
+            anyType.add(NONE);
+        }
+    }
+
+    /**
+     * Register a handler, must be done before routing any event. Handlers are called in their registration order, the ones
+     * for every type before the ones for a specific type.
+     *
+     * @param name    the name of the handler, used for the statistics
+     * @param type    the event type, null for every type
+     * @param scope   the kind of rooms the handler is interested in
+     * @param handler the handler
+     */
+    public void register(final String name, final String type, final RoomScope scope, final Handler handler)
+    {
+        final Registration registration = new Registration(handler);
+        registrations.put(name, registration);
+
+        if (type == null)
+        {
+            anyType.set(scope.ordinal(), append(anyType.get(scope.ordinal()), registration));
+        }
+        else
+        {
+            byType.get(scope.ordinal()).merge(type, new Registration[] { registration }, (a, b) -> append(a, b[0]));
+        }
+    }
+
+    public void route(final String roomId, final RoomScope scope, final List<Event> events)
+    {
+        if (events == null)
+        {
+            return;
+        }
+
+        final Registration[] forAny = anyType.get(scope.ordinal());
+        final Map<String, Registration[]> forType = byType.get(scope.ordinal());
+
+        for (final Event<?> event : events)
+        {
+            dispatch(forAny, roomId, event);
+            dispatch(forType.getOrDefault(event.getType(), NONE), roomId, event);
+        }
+    }
+
+    /**
+     * @return the count of events seen by each handler
+     */
+    public Map<String, Long> getHandledCounts()
+    {
+        final Map<String, Long> ret = new LinkedHashMap<>();
+        registrations.forEach((name, registration) -> ret.put(name, registration.handled.get()));
+
+        return ret;
+    }
+
+    private static void dispatch(final Registration[] handlers, final String roomId, final Event<?> event)
+    {
+        for (final Registration registration : handlers)
+        {
+            registration.handled.incrementAndGet();
+            registration.handler.handle(roomId, event);
+        }
+    }
+
+    private static Registration[] append(final Registration[] registrations, final Registration registration)
+    {
+        final Registration[] ret = Arrays.copyOf(registrations, registrations.length + 1);
+        ret[registrations.length] = registration;
+
+        return ret;
+    }
+
+    private static final class Registration
+    {
+        private final Handler handler;
+
+        private final AtomicLong handled = new AtomicLong();
+
+        private Registration(final Handler handler)
+        {
+            this.handler = handler;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  LogConfigStore.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import org.jnbt.CompoundTag;
+import org.jnbt.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The config as an append only log of entries, one entry being a setting, a room, a var or a whole list.
+ * A change appends the new value of its entry, the tree is rebuilt from the log on load, and the log is rewritten with
+ * only the live entries once most of it is outdated.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class LogConfigStore implements ConfigStore
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogConfigStore.class);
+
+    // don't bother rewriting a small log
+    private static final long MIN_COMPACT_SIZE = 64 * 1024;
+
+    private final File file;
+
+    private NBTJournal log;
+
+    // state of the log after our last read or write
+    private final Stamps stamps = new Stamps();
+
+    // size of the last record of each entry, to know how much of the log is still live
+    private Index index = new Index();
+
+    public LogConfigStore(final File file)
+    {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized CompoundTag load()
+    {
+        final CompoundTag root = new CompoundTag("root");
+        try
+        {
+            log = new NBTJournal(file);
+
+            final int count = log.replay(root, index::put);
+            LOGGER.info("{} :: {} records read, {} entries", file.getName(), count, index.getCount());
+        }
+        catch (final IOException e)
+        {
+            LOGGER.error("Unable to read {}, changes will be fully written : {}", file, e.getMessage());
+            log = null;
+        }
+        stamps.reset(getFiles());
+
+        return root;
+    }
+
+    @Override
+    public synchronized CompoundTag reload()
+    {
+        final CompoundTag root = new CompoundTag("root");
+        final Index reloaded = new Index();
+        try
+        {
+            // the log may have been rewritten, not only appended to
+            if (log != null)
+            {
+                log.close();
+            }
+            log = new NBTJournal(file);
+            log.replay(root, reloaded::put, false);
+        }
+        catch (final IOException e)
+        {
+            LOGGER.error("Unable to reload {} : {}", file, e.getMessage());
+            log = null;
+            return null;
+        }
+        index = reloaded;
+        stamps.reset(getFiles());
+
+        return root;
+    }
+
+    @Override
+    public synchronized boolean write(final NBTPath path, final Tag<?> tag)
+    {
+        if (log == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            final byte[] record = NBTJournal.encode(path, tag);
+            final boolean ours = stamps.isOurs(file);
+            log.append(record);
+            stamps.wrote(file, ours);
+            index.put(path, record.length);
+
+            return true;
+        }
+        catch (final IOException e)
+        {
+            LOGGER.error("Unable to append to {} : {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public Append append(final Map<NBTPath, Tag<?>> changes)
+    {
+        synchronized (this)
+        {
+            if (log == null)
+            {
+                return null;
+            }
+        }
+
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final List<NBTPath> paths = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+        try
+        {
+            for (final Map.Entry<NBTPath, Tag<?>> change : changes.entrySet())
+            {
+                final byte[] record = NBTJournal.encode(change.getKey(), change.getValue());
+                records.write(record);
+                paths.add(change.getKey());
+                sizes.add(record.length);
+            }
+        }
+        catch (final IOException e)
+        {
+            LOGGER.error("Unable to encode the changes of {} : {}", file, e.getMessage());
+            return null;
+        }
+
+        return () ->
+        {
+            synchronized (this)
+            {
+                if (log == null)
+                {
+                    return false;
+                }
+
+                try
+                {
+                    final boolean ours = stamps.isOurs(file);
+                    log.append(records.toByteArray());
+                    stamps.wrote(file, ours);
+                    for (int i = 0; i < paths.size(); i++)
+                    {
+                        index.put(paths.get(i), sizes.get(i));
+                    }
+                    return true;
+                }
+                catch (final IOException e)
+                {
+                    LOGGER.error("Unable to append to {} : {}", file, e.getMessage());
+                    return false;
+                }
+            }
+        };
+    }
+
+    @Override
+    public synchronized boolean isCompactionNeeded()
+    {
+        final long size = logSize();
+        return log == null || (size > MIN_COMPACT_SIZE && size > 2 * index.liveBytes);
+    }
+
+    @Override
+    public Compaction compact(final CompoundTag root)
+    {
+        // one record per entry of the tree
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final Index entries = new Index();
+        try
+        {
+            for (final Tag<?> t : root.getValue().values())
+            {
+                final NBTPath top = NBTPath.ROOT.child(t.getName());
+                if (t instanceof CompoundTag && !((CompoundTag) t).isEmpty())
+                {
+                    for (final Tag<?> child : ((CompoundTag) t).getValue().values())
+                    {
+                        addRecord(records, entries, top.child(child.getName()), child);
+                    }
+                }
+                else
+                {
+                    addRecord(records, entries, top, t);
+                }
+            }
+        }
+        catch (final IOException e)
+        {
+            LOGGER.error("Unable to encode {} : {}", file, e.getMessage());
+            return () -> false;
+        }
+
+        final long logMark = logSize();
+
+        return () -> rewrite(records.toByteArray(), entries, logMark);
+    }
+
+    @Override
+    public List<File> getFiles()
+    {
+        return Collections.singletonList(file);
+    }
+
+    @Override
+    public synchronized boolean isChangedOnDisk()
+    {
+        return stamps.isChanged();
+    }
+
+    @Override
+    public String describe()
+    {
+        return "append log " + file;
+    }
+
+    private boolean rewrite(final byte[] records, final Index entries, final long logMark)
+    {
+        final File tmp = new File(file.getPath() + ".tmp");
+        file.getAbsoluteFile().getParentFile().mkdirs();
+
+        synchronized (this)
+        {
+            try
+            {
+                // the records appended since the capture are kept after the compacted ones
+                final byte[] tail = log != null ? log.readFrom(logMark) : new byte[0];
+                try (final FileOutputStream out = new FileOutputStream(tmp))
+                {
+                    out.write(records);
+                    out.write(tail);
+                    out.getFD().sync();
+                }
+
+                if (log == null)
+                {
+                    log = new NBTJournal(file);
+                }
+                final boolean ours = stamps.isOurs(file);
+                log.replaceWith(tmp);
+                stamps.wrote(file, ours);
+
+                // the entries changed by the tail may be counted twice until the next rewrite
+                entries.liveBytes += tail.length;
+                index = entries;
+
+                return true;
+            }
+            catch (final IOException e)
+            {
+                LOGGER.error("Unable to rewrite {} : {}", file, e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    private static void addRecord(final ByteArrayOutputStream records, final Index entries, final NBTPath path, final Tag<?> tag) throws IOException
+    {
+        final byte[] record = NBTJournal.encode(path, tag);
+        records.write(record);
+        entries.put(path, record.length);
+    }
+
+    /**
+     * Size of the last record of each entry, grouped by top folder so a change stays O(1).
+     * A record of a whole folder replaces the records of its entries.
+     */
+    private static final class Index
+    {
+        private final Map<String, Integer> folders = new HashMap<>();
+        private final Map<String, Map<NBTPath, Integer>> entries = new HashMap<>();
+
+        private long liveBytes;
+        private int count;
+
+        private void put(final NBTPath path, final int size)
+        {
+            final String top = path.get(0);
+            if (path.size() == 1)
+            {
+                final Map<NBTPath, Integer> replaced = entries.remove(top);
+                if (replaced != null)
+                {
+                    for (final Integer s : replaced.values())
+                    {
+                        liveBytes -= s;
+                    }
+                    count -= replaced.size();
+                }
+
+                replace(folders.put(top, size), size);
+            }
+            else
+            {
+                replace(entries.computeIfAbsent(top, k -> new HashMap<>()).put(path, size), size);
+            }
+        }
+
+        private void replace(final Integer previous, final int size)
+        {
+            if (previous != null)
+            {
+                liveBytes -= previous;
+            }
+            else
+            {
+                count++;
+            }
+            liveBytes += size;
+        }
+
+        private int getCount()
+        {
+            return count;
+        }
+    }
+
+    private synchronized long logSize()
+    {
+        try
+        {
+            return log != null ? log.size() : 0;
+        }
+        catch (final IOException e)
+        {
+            return 0;
+        }
+    }
+}
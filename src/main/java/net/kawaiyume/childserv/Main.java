@@ -36,6 +36,8 @@
 
 package net.kawaiyume.childserv;
 
+import io.github.ma1uta.matrix.support.jackson.DefaultObjectMapperProvider;
+
 import java.io.IOException;
 
 /**
@@ -43,10 +45,23 @@ import java.io.IOException;
  */
 public class Main
 {
+    // event types the bot never looks at, they are not even decoded
+    private static final String SKIPPED_EVENT_TYPES = "m.receipt,m.typing,m.presence,m.reaction";
+
     public static void main(final String[] args) throws IOException
     {
         SLF4JHelper.init();
 
+        // only decode the content of the events actually handled, can be overridden from the command line
+        if (System.getProperty(DefaultObjectMapperProvider.LAZY_EVENT_CONTENT) == null)
+        {
+            System.setProperty(DefaultObjectMapperProvider.LAZY_EVENT_CONTENT, Boolean.TRUE.toString());
+        }
+        if (System.getProperty(DefaultObjectMapperProvider.SKIPPED_EVENT_TYPES) == null)
+        {
+            System.setProperty(DefaultObjectMapperProvider.SKIPPED_EVENT_TYPES, SKIPPED_EVENT_TYPES);
+        }
+
         new ChildServ(args.length > 0 && args[0].equals("-debug"));
     }
 }
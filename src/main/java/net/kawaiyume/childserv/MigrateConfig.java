@@ -0,0 +1,70 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  MigrateConfig.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import org.jnbt.CompoundTag;
+
+/**
+ * Copy the config from a store to another, "MigrateConfig nbt log" then start with -Dchildserv.config.store=log
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class MigrateConfig
+{
+	public static void main(final String[] args)
+	{
+		if(args.length != 2 || args[0].equalsIgnoreCase(args[1]))
+		{
+			System.err.println("usage : MigrateConfig <" + ConfigStore.NBT + "|" + ConfigStore.LOG + "> <" + ConfigStore.NBT + "|" + ConfigStore.LOG + ">");
+			System.exit(1);
+		}
+
+		final ConfigStore source = ConfigStore.forName(args[0]);
+		final ConfigStore target = ConfigStore.forName(args[1]);
+
+		final CompoundTag root = source.load();
+		target.load();
+
+		if(!target.compact(root).run())
+		{
+			System.err.println("Unable to write the config to " + target.describe());
+			System.exit(1);
+		}
+
+		System.out.println("Config copied from " + source.describe() + " to " + target.describe() + ", start with -D" + ConfigStore.STORE_PROPERTY + "=" + args[1]);
+	}
+}
@@ -0,0 +1,288 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  NBTConfigStore.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import org.jnbt.CompoundTag;
+import org.jnbt.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The config as a single gzip nbt file, the changes since its last write being appended to a journal next to it.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class NBTConfigStore implements ConfigStore
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(NBTConfigStore.class);
+
+    // journal size triggering a full write
+    private static final long JOURNAL_COMPACT_SIZE = 64 * 1024;
+
+    private final File file;
+    private final File journalFile;
+
+    // state of the files after our last read or write
+    private final Stamps stamps = new Stamps();
+
+    // null when the journal can't be used, each change is then a full write
+    private NBTJournal journal;
+
+    public NBTConfigStore(final File file)
+    {
+        this.file = file;
+        this.journalFile = new File(file.getPath() + ".journal");
+    }
+
+    @Override
+    public CompoundTag load()
+    {
+        CompoundTag root = NBTHelper.readFileOrSetAside(file);
+        final boolean exists = root != null;
+        if (root == null)
+        {
+            root = new CompoundTag("root");
+        }
+
+        int replayed = 0;
+        try
+        {
+            journal = new NBTJournal(journalFile);
+            replayed = journal.replay(root);
+            if (replayed > 0)
+            {
+                LOGGER.info("{} :: {} changes replayed from the journal", file.getName(), replayed);
+            }
+        }
+        catch (final IOException e)
+        {
+            LOGGER.error("Unable to open the journal of {}, changes will be fully written : {}", file, e.getMessage());
+            journal = null;
+        }
+
+        if (!exists || replayed > 0)
+        {
+            compact(root).run();
+        }
+        stamps.reset(getFiles());
+
+        return root;
+    }
+
+    @Override
+    public synchronized CompoundTag reload()
+    {
+        final CompoundTag root = NBTHelper.readFile(file);
+        if (root == null)
+        {
+            LOGGER.error("Unable to reload {}", file);
+            return null;
+        }
+
+        try
+        {
+            // the journal may have been replaced, not only appended to
+            if (journal != null)
+            {
+                journal.close();
+            }
+            journal = new NBTJournal(journalFile);
+            journal.replay(root, (path, size) -> { }, false);
+        }
+        catch (final IOException e)
+        {
+            LOGGER.error("Unable to reload the journal of {}, changes will be fully written : {}", file, e.getMessage());
+            journal = null;
+        }
+        stamps.reset(getFiles());
+
+        return root;
+    }
+
+    @Override
+    public synchronized boolean write(final NBTPath path, final Tag<?> tag)
+    {
+        if (journal == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            final boolean ours = stamps.isOurs(journalFile);
+            journal.record(path, tag);
+            stamps.wrote(journalFile, ours);
+            return true;
+        }
+        catch (final IOException e)
+        {
+            LOGGER.error("Unable to append to the journal of {} : {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public Append append(final Map<NBTPath, Tag<?>> changes)
+    {
+        synchronized (this)
+        {
+            if (journal == null)
+            {
+                return null;
+            }
+        }
+
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        try
+        {
+            for (final Map.Entry<NBTPath, Tag<?>> change : changes.entrySet())
+            {
+                records.write(NBTJournal.encode(change.getKey(), change.getValue()));
+            }
+        }
+        catch (final IOException e)
+        {
+            LOGGER.error("Unable to encode the changes of {} : {}", file, e.getMessage());
+            return null;
+        }
+
+        return () ->
+        {
+            synchronized (this)
+            {
+                if (journal == null)
+                {
+                    return false;
+                }
+
+                try
+                {
+                    final boolean ours = stamps.isOurs(journalFile);
+                    journal.append(records.toByteArray());
+                    stamps.wrote(journalFile, ours);
+                    return true;
+                }
+                catch (final IOException e)
+                {
+                    LOGGER.error("Unable to append to the journal of {} : {}", file, e.getMessage());
+                    return false;
+                }
+            }
+        };
+    }
+
+    @Override
+    public synchronized boolean isCompactionNeeded()
+    {
+        return journalSize() > JOURNAL_COMPACT_SIZE;
+    }
+
+    @Override
+    public Compaction compact(final CompoundTag root)
+    {
+        final byte[] data = NBTHelper.writeBytes(root);
+        final long journalMark = journalSize();
+
+        return () ->
+        {
+            final boolean fileOurs = stamps.isOurs(file);
+            file.getAbsoluteFile().getParentFile().mkdirs();
+            if (!NBTHelper.writeFile(data, file))
+            {
+                return false;
+            }
+            stamps.wrote(file, fileOurs);
+
+            synchronized (this)
+            {
+                if (journal != null)
+                {
+                    final boolean journalOurs = stamps.isOurs(journalFile);
+                    try
+                    {
+                        journal.discard(journalMark);
+                        stamps.wrote(journalFile, journalOurs);
+                    }
+                    catch (final IOException e)
+                    {
+                        // the records left are already in the file, replaying them is harmless
+                        LOGGER.error("Unable to trim the journal of {} : {}", file, e.getMessage());
+                    }
+                }
+            }
+
+            return true;
+        };
+    }
+
+    @Override
+    public List<File> getFiles()
+    {
+        return Arrays.asList(file, journalFile);
+    }
+
+    @Override
+    public synchronized boolean isChangedOnDisk()
+    {
+        return stamps.isChanged();
+    }
+
+    @Override
+    public String describe()
+    {
+        return "nbt file " + file;
+    }
+
+    private synchronized long journalSize()
+    {
+        try
+        {
+            return journal != null ? journal.size() : 0;
+        }
+        catch (final IOException e)
+        {
+            return 0;
+        }
+    }
+}
@@ -37,11 +37,14 @@
 package net.kawaiyume.childserv;
 
 import org.jnbt.CompoundTag;
+import org.jnbt.NBTCompression;
 import org.jnbt.NBTInputStream;
 import org.jnbt.NBTOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -49,6 +52,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 /**
  * Utility class helping use of nbt files
@@ -77,9 +83,20 @@ public final class NBTHelper
 			return false;
 		}
 
+		return writeFile(writeBytes(tag), file);
+	}
+
+	public static boolean writeFile(final CompoundTag tag, final OutputStream out)
+	{
+		if(tag == null)
+		{
+			LOGGER.error("Can't write to file a null tag !");
+			return false;
+		}
+
 		try
 		{
-			final NBTOutputStream nbtOutputStream = new NBTOutputStream(new FileOutputStream(file));
+			final NBTOutputStream nbtOutputStream = new NBTOutputStream(out);
 			nbtOutputStream.writeTag(tag);
 			nbtOutputStream.close();
 
@@ -93,25 +110,88 @@ public final class NBTHelper
 		return false;
 	}
 
-	public static boolean writeFile(final CompoundTag tag, final OutputStream out)
+	/**
+	 * Serialize a tag in memory, null if it failed
+	 */
+	public static byte[] writeBytes(final CompoundTag tag)
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		return writeFile(tag, out) ? out.toByteArray() : null;
+	}
+
+	/**
+	 * Serialize a tag in memory with the given compression and level, null if it failed
+	 */
+	public static byte[] writeBytes(final CompoundTag tag, final NBTCompression compression, final int level)
 	{
 		if(tag == null)
 		{
-			LOGGER.error("Can't write to file a null tag !");
+			LOGGER.error("Can't write a null tag !");
+			return null;
+		}
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(final NBTOutputStream nbtOutputStream = new NBTOutputStream(out, compression, level))
+		{
+			nbtOutputStream.writeTag(tag);
+		}
+		catch(final IOException e)
+		{
+			LOGGER.error("Error during NBT generation : {}", e.getMessage());
+			return null;
+		}
+
+		return out.toByteArray();
+	}
+
+	public static CompoundTag readBytes(final byte[] data, final NBTCompression compression)
+	{
+		try(final NBTInputStream nbtInputStream = new NBTInputStream(new ByteArrayInputStream(data), compression))
+		{
+			return (CompoundTag) nbtInputStream.readTag();
+		}
+		catch(final IOException e)
+		{
+			LOGGER.error("Error during NBT read : {}", e.getMessage());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Write the data to a temporary file, sync it, then move it over the target, so the target is always complete
+	 */
+	public static boolean writeFile(final byte[] data, final File file)
+	{
+		if(data == null)
+		{
+			LOGGER.error("Can't write to file null data !");
 			return false;
 		}
 
+		final File tmp = new File(file.getPath() + ".tmp");
 		try
 		{
-			final NBTOutputStream nbtOutputStream = new NBTOutputStream(out);
-			nbtOutputStream.writeTag(tag);
-			nbtOutputStream.close();
+			try(final FileOutputStream out = new FileOutputStream(tmp))
+			{
+				out.write(data);
+				out.getFD().sync();
+			}
+
+			try
+			{
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(final AtomicMoveNotSupportedException e)
+			{
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
 
 			return true;
 		}
-		catch(final Exception e)
+		catch(final IOException e)
 		{
-			LOGGER.error("Error during NBT generation : {}", e);
+			LOGGER.error("Error during NBT write : {}", e.getMessage());
 		}
 
 		return false;
@@ -169,6 +249,25 @@ public final class NBTHelper
 		return null;
 	}
 
+	/**
+	 * Read a file, an unreadable file is moved aside instead of being left to be overwritten
+	 */
+	public static CompoundTag readFileOrSetAside(final File file)
+	{
+		final CompoundTag root = readFile(file);
+		if(root == null && file.length() > 0)
+		{
+			final File corrupt = new File(file.getPath() + ".corrupt-" + System.currentTimeMillis());
+			LOGGER.error("{} is unreadable, moved to {}", file, corrupt);
+			if(!file.renameTo(corrupt))
+			{
+				LOGGER.error("Unable to move {}", file);
+			}
+		}
+
+		return root;
+	}
+
 	public static CompoundTag readFile(final String fileName)
 	{
 		return readFile(new File(fileName));
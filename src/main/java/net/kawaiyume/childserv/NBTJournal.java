@@ -0,0 +1,337 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  NBTJournal.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import org.jnbt.CompoundTag;
+import org.jnbt.NBTInputStream;
+import org.jnbt.NBTOutputStream;
+import org.jnbt.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of the changes made to a nbt tree.
+ * Each record holds the absolute path of the changed tag and its new value (or its removal), so replaying a record
+ * already applied is harmless.
+ * A record is stored as [length][crc][payload], a torn record at the end of the journal is dropped on replay.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public final class NBTJournal
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(NBTJournal.class);
+
+	private static final byte OP_PUT    = 1;
+	private static final byte OP_REMOVE = 2;
+
+	// length and crc
+	private static final int HEADER_SIZE = 8;
+
+	private final File       file;
+	private RandomAccessFile raf;
+
+	public NBTJournal(final File file) throws IOException
+	{
+		this.file = file;
+
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		raf = new RandomAccessFile(file, "rw");
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Size of the journal in bytes, also the position of the next record
+	 */
+	public long size() throws IOException
+	{
+		return raf.length();
+	}
+
+	/**
+	 * Apply the journal on the given root, returns the count of records applied
+	 */
+	public int replay(final CompoundTag root) throws IOException
+	{
+		return replay(root, (path, size) -> { });
+	}
+
+	/**
+	 * Apply the journal on the given root, the listener gets the path and the size of each record applied
+	 */
+	public int replay(final CompoundTag root, final ObjIntConsumer<NBTPath> listener) throws IOException
+	{
+		return replay(root, listener, true);
+	}
+
+	/**
+	 * Apply the journal on the given root, without repair an incomplete record at the end is left in place, as another
+	 * process may still be writing it
+	 */
+	public int replay(final CompoundTag root, final ObjIntConsumer<NBTPath> listener, final boolean repair) throws IOException
+	{
+		int count = 0;
+		long valid = 0;
+
+		raf.seek(0);
+		while(true)
+		{
+			final byte[] payload;
+			try
+			{
+				final int length = raf.readInt();
+				final long crc = raf.readInt() & 0xFFFFFFFFL;
+				if(length <= 0 || length > raf.length() - raf.getFilePointer())
+				{
+					break;
+				}
+
+				payload = new byte[length];
+				raf.readFully(payload);
+
+				if(crc(payload) != crc)
+				{
+					break;
+				}
+			}
+			catch(final EOFException e)
+			{
+				break;
+			}
+
+			final NBTPath path = apply(root, payload);
+			if(path != null)
+			{
+				listener.accept(path, HEADER_SIZE + payload.length);
+			}
+			valid = raf.getFilePointer();
+			count++;
+		}
+
+		if(repair && valid < raf.length())
+		{
+			LOGGER.warn("{} :: dropping {} bytes of incomplete journal", file.getName(), raf.length() - valid);
+			raf.setLength(valid);
+		}
+		raf.seek(raf.length());
+
+		return count;
+	}
+
+	/**
+	 * Record the current value of the tag at the given path, or its removal if there is none
+	 */
+	public void record(final NBTPath path, final Tag<?> tag) throws IOException
+	{
+		append(encode(path, tag));
+	}
+
+	/**
+	 * Append already encoded records and sync them
+	 */
+	public void append(final byte[] records) throws IOException
+	{
+		raf.seek(raf.length());
+		raf.write(records);
+		raf.getFD().sync();
+	}
+
+	/**
+	 * The records written from the given position
+	 */
+	public byte[] readFrom(final long position) throws IOException
+	{
+		final long length = raf.length();
+		if(position >= length)
+		{
+			return new byte[0];
+		}
+
+		final byte[] tail = new byte[(int) (length - position)];
+		raf.seek(position);
+		raf.readFully(tail);
+
+		return tail;
+	}
+
+	/**
+	 * Drop the records before the given position, they are now part of a full write
+	 */
+	public void discard(final long position) throws IOException
+	{
+		final byte[] tail = readFrom(position);
+
+		raf.setLength(0);
+		if(tail.length > 0)
+		{
+			// keep the records added during the full write
+			raf.write(tail);
+		}
+		raf.getFD().sync();
+	}
+
+	/**
+	 * Atomically replace the journal by the given file, a synced and complete journal
+	 */
+	public void replaceWith(final File other) throws IOException
+	{
+		raf.close();
+		try
+		{
+			Files.move(other.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(final AtomicMoveNotSupportedException e)
+		{
+			Files.move(other.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally
+		{
+			raf = new RandomAccessFile(file, "rw");
+			raf.seek(raf.length());
+		}
+	}
+
+	public void close() throws IOException
+	{
+		raf.close();
+	}
+
+	/**
+	 * Encode a record, with its length and crc, a null tag is recorded as a removal
+	 */
+	public static byte[] encode(final NBTPath path, final Tag<?> tag) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeByte(tag != null ? OP_PUT : OP_REMOVE);
+		out.writeShort(path.size());
+		for(int cpt = 0; cpt < path.size(); cpt++)
+		{
+			out.writeUTF(path.get(cpt));
+		}
+		if(tag != null)
+		{
+			final NBTOutputStream nbt = new NBTOutputStream(out, false);
+			nbt.writeTag(tag);
+			nbt.close();
+		}
+		out.close();
+
+		final byte[] payload = bytes.toByteArray();
+
+		return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+			.putInt(payload.length)
+			.putInt((int) crc(payload))
+			.put(payload)
+			.array();
+	}
+
+	private static NBTPath apply(final CompoundTag root, final byte[] payload) throws IOException
+	{
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+		final byte op = in.readByte();
+		NBTPath path = NBTPath.ROOT;
+		final int size = in.readShort();
+		for(int cpt = 0; cpt < size; cpt++)
+		{
+			path = path.child(in.readUTF());
+		}
+
+		// create the missing folders on the way
+		CompoundTag parent = root;
+		for(int cpt = 0; cpt < path.size() - 1; cpt++)
+		{
+			final Tag<?> t = parent.get(path.get(cpt));
+			if(t == null)
+			{
+				final CompoundTag folder = new CompoundTag(path.get(cpt));
+				parent.put(folder);
+				parent = folder;
+			}
+			else if(t instanceof CompoundTag)
+			{
+				parent = (CompoundTag) t;
+			}
+			else
+			{
+				LOGGER.warn("Journal record {} don't match the tree, skipped", path);
+				return null;
+			}
+		}
+
+		if(op == OP_PUT)
+		{
+			final NBTInputStream nbt = new NBTInputStream(in, false);
+			parent.put(path.getLeaf(), nbt.readTag());
+			nbt.close();
+		}
+		else
+		{
+			parent.getValue().remove(path.getLeaf());
+		}
+
+		return path;
+	}
+
+	private static long crc(final byte[] payload)
+	{
+		final CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,206 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  NBTLazyNavigator.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import org.jnbt.CompoundTag;
+import org.jnbt.IntTag;
+import org.jnbt.LongTag;
+import org.jnbt.NBTLazyReader;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Read only navigator over a nbt file read in place, only the tags reached by a path are decoded.
+ * {@link DumpConfig} reads a single path of the config file with it, the running config stays on {@link NBTNavigator}.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class NBTLazyNavigator
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(NBTLazyNavigator.class);
+
+	private final File          file;
+	private final NBTLazyReader reader;
+
+	public NBTLazyNavigator(final File nbtFile) throws IOException
+	{
+		this.file = nbtFile;
+		this.reader = NBTLazyReader.open(nbtFile);
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Walk the compounds of the path without decoding them, null if the path don't lead to a compound
+	 */
+	public NBTLazyReader.Compound findCompound(final String path)
+	{
+		NBTLazyReader.Compound c = reader.getRoot();
+		if(path == null || path.isEmpty())
+		{
+			return c;
+		}
+
+		try
+		{
+			for(final String p : path.split("/"))
+			{
+				c = c.getCompound(p);
+				if(c == null)
+				{
+					return null;
+				}
+			}
+		}
+		catch(final IOException e)
+		{
+			LOGGER.error("{} :: unable to read {} : {}", file, path, e.getMessage());
+			return null;
+		}
+
+		return c;
+	}
+
+	public Tag<?> findTag(final String path)
+	{
+		final int split = path.lastIndexOf('/');
+		final NBTLazyReader.Compound parent = findCompound(split < 0 ? "" : path.substring(0, split));
+		if(parent == null)
+		{
+			return null;
+		}
+
+		try
+		{
+			return parent.get(path.substring(split + 1));
+		}
+		catch(final IOException e)
+		{
+			LOGGER.error("{} :: unable to read {} : {}", file, path, e.getMessage());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Decode the compound at the given path, with all its children
+	 */
+	public CompoundTag getCompound(final String path)
+	{
+		final NBTLazyReader.Compound c = findCompound(path);
+		if(c == null)
+		{
+			return null;
+		}
+
+		try
+		{
+			return c.toTag();
+		}
+		catch(final IOException e)
+		{
+			LOGGER.error("{} :: unable to read {} : {}", file, path, e.getMessage());
+		}
+
+		return null;
+	}
+
+	public Set<String> keys(final String path)
+	{
+		final NBTLazyReader.Compound c = findCompound(path);
+		if(c != null)
+		{
+			try
+			{
+				return c.keys();
+			}
+			catch(final IOException e)
+			{
+				LOGGER.error("{} :: unable to read {} : {}", file, path, e.getMessage());
+			}
+		}
+
+		return Collections.emptySet();
+	}
+
+	public String getString(final String path)
+	{
+		final Tag<?> t = findTag(path);
+		if(t instanceof StringTag)
+		{
+			return ((StringTag) t).getValue();
+		}
+
+		return null;
+	}
+
+	public Integer getInteger(final String path)
+	{
+		final Tag<?> t = findTag(path);
+		if(t instanceof IntTag)
+		{
+			return ((IntTag) t).getValue();
+		}
+		else if(t instanceof LongTag)
+		{
+			return ((LongTag) t).getValue().intValue();
+		}
+
+		return null;
+	}
+
+	public Long getLong(final String path)
+	{
+		final Tag<?> t = findTag(path);
+		if(t instanceof LongTag)
+		{
+			return ((LongTag) t).getValue();
+		}
+
+		return null;
+	}
+}
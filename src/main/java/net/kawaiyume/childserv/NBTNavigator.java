@@ -92,7 +92,7 @@ public class NBTNavigator
 	public NBTNavigator(final File nbtFile, final boolean createNotFound)
 	{
 		this.file = nbtFile;
-		root = NBTHelper.readFile(nbtFile);
+		root = NBTHelper.readFileOrSetAside(nbtFile);
 
 		if(root == null && createNotFound)
 		{
@@ -141,45 +141,80 @@ public class NBTNavigator
 
 	public Tag<?> findTag(final String path)
 	{
-		final String[] paths = path.split("/");
+		return findTag(NBTPath.of(path));
+	}
 
-		CompoundTag t = root;
-		if(paths.length > 1)
+	public Tag<?> findTag(final NBTPath path)
+	{
+		Tag<?> t = root;
+		for(int cpt = 0; cpt < path.size(); cpt++)
 		{
-			for(int cpt = 0; cpt < paths.length - 1; cpt++)
+			if(!(t instanceof CompoundTag))
 			{
-				if(t != null)
-				{
-					t = (CompoundTag) t.getValue().get(paths[cpt]);
-				}
-				else
-				{
-					return null;
-				}
+				return null;
 			}
+			t = ((CompoundTag) t).getValue().get(path.get(cpt));
 		}
 
-		if(t != null)
+		return t;
+	}
+
+	public Tag<?> findParent(final String path)
+	{
+		return findParent(NBTPath.of(path));
+	}
+
+	/**
+	 * The compound holding the tag of the path, null if one of the folders on the way is missing
+	 */
+	public CompoundTag findParent(final NBTPath path)
+	{
+		if(path.isRoot())
 		{
-			return t.getValue().get(paths[paths.length - 1]);
+			return null;
 		}
 
-		return null;
+		final Tag<?> t = findTag(path.getParent());
+		return t instanceof CompoundTag ? (CompoundTag) t : null;
 	}
 
-	public Tag<?> findParent(final String path)
+	/**
+	 * The compound of the path, the missing folders on the way are created
+	 *
+	 * @throws IllegalStateException if a tag on the way is not a compound, it is never replaced
+	 */
+	public CompoundTag getOrCreateCompound(final NBTPath path)
 	{
-		if(!path.contains("/"))
+		CompoundTag t = root;
+		for(int cpt = 0; cpt < path.size(); cpt++)
 		{
-			// no parent path, returning root
-			return root;
+			final String name = path.get(cpt);
+			final Tag<?> child = t.getValue().get(name);
+			if(child instanceof CompoundTag)
+			{
+				t = (CompoundTag) child;
+			}
+			else if(child != null)
+			{
+				throw new IllegalStateException(name + " of " + path + " is not a folder");
+			}
+			else
+			{
+				final CompoundTag folder = new CompoundTag(name);
+				t.getValue().put(name, folder);
+				t = folder;
+			}
 		}
 
-		// TODO
-		return null;
+		return t;
 	}
 
 	public Long getLong(final String path)
+	{
+		return getLong(NBTPath.of(path));
+	}
+
+	public Long getLong(final NBTPath path)
 	{
 		final LongTag lTag = (LongTag) findTag(path);
 		if(lTag == null)
@@ -191,6 +226,11 @@ public class NBTNavigator
 	}
 
 	public Integer getInteger(final String path)
+	{
+		return getInteger(NBTPath.of(path));
+	}
+
+	public Integer getInteger(final NBTPath path)
 	{
 		final Tag<?> t = findTag(path);
 		if(t instanceof IntTag)
@@ -206,6 +246,11 @@ public class NBTNavigator
 	}
 
 	public Boolean getBoolean(final String path)
+	{
+		return getBoolean(NBTPath.of(path));
+	}
+
+	public Boolean getBoolean(final NBTPath path)
 	{
 		final ByteTag bTag = (ByteTag) findTag(path);
 		if(bTag == null)
@@ -217,6 +262,11 @@ public class NBTNavigator
 	}
 
 	public String getString(final String path)
+	{
+		return getString(NBTPath.of(path));
+	}
+
+	public String getString(final NBTPath path)
 	{
 		final StringTag strTag = (StringTag) findTag(path);
 		if(strTag == null)
@@ -241,14 +291,19 @@ public class NBTNavigator
 	}
 
 	public CompoundTag getCompound(final String path)
+	{
+		return getCompound(NBTPath.of(path));
+	}
+
+	public CompoundTag getCompound(final NBTPath path)
 	{
 		return (CompoundTag) findTag(path);
 	}
 
 	public void addCompound(final String path, final CompoundTag newTag)
 	{
-		final CompoundTag parent = (CompoundTag) findParent(path);
-		parent.getValue().put(extractLeafPath(path), newTag);
+		final NBTPath p = NBTPath.of(path);
+		getOrCreateCompound(p.getParent()).getValue().put(p.getLeaf(), newTag);
 	}
 
 	public void addString(final String path, final String value)
@@ -258,50 +313,47 @@ public class NBTNavigator
 
 	public void addString(final String path, final String value, final String defaultValue)
 	{
-		final CompoundTag parent = (CompoundTag) findParent(path);
-		if(parent == null)
+		final String v = value != null ? value : defaultValue;
+		if(v == null)
 		{
-			LOGGER.error("Unable to append string tag to parent, as parent is not found");
 			return;
 		}
 
-		final String what = extractLeafPath(path);
+		final NBTPath p = NBTPath.of(path);
+		final CompoundTag parent = getOrCreateCompound(p.getParent());
 
-		if(value != null)
-		{
-			parent.getValue().put(what, new StringTag(what, value));
-		}
-		else if(defaultValue != null)
-		{
-			parent.getValue().put(what, new StringTag(what, defaultValue));
-		}
+		final String what = p.getLeaf();
+		parent.getValue().put(what, new StringTag(what, v));
 	}
 
 	public void addInteger(final String path, final int value)
 	{
-		final CompoundTag parent = (CompoundTag) findParent(path);
+		final NBTPath p = NBTPath.of(path);
+		final CompoundTag parent = getOrCreateCompound(p.getParent());
 
-		final String what = extractLeafPath(path);
+		final String what = p.getLeaf();
 		parent.getValue().put(what, new IntTag(what, value));
 	}
 
 	public void addLong(final String path, final long value)
 	{
-		final CompoundTag parent = (CompoundTag) findParent(path);
+		final NBTPath p = NBTPath.of(path);
+		final CompoundTag parent = getOrCreateCompound(p.getParent());
 
-		final String what = extractLeafPath(path);
+		final String what = p.getLeaf();
 		parent.getValue().put(what, new LongTag(what, value));
 	}
 
 	public long incLong(final String path, final int incAmount)
 	{
-		LongTag lTag = (LongTag) findTag(path);
+		final NBTPath p = NBTPath.of(path);
+		LongTag lTag = (LongTag) findTag(p);
 		if(lTag == null)
 		{
-			final String what = extractLeafPath(path);
+			final String what = p.getLeaf();
 			lTag = new LongTag(what, incAmount);
 
-			final CompoundTag parent = (CompoundTag) findParent(path);
+			final CompoundTag parent = getOrCreateCompound(p.getParent());
 			parent.getValue().put(what, lTag);
 		}
 		else
@@ -314,24 +366,24 @@ public class NBTNavigator
 
 	public void addBoolean(final String path, final boolean bool)
 	{
-		final CompoundTag parent = (CompoundTag) findParent(path);
+		final NBTPath p = NBTPath.of(path);
+		final CompoundTag parent = getOrCreateCompound(p.getParent());
 
-		final String what = extractLeafPath(path);
+		final String what = p.getLeaf();
 		parent.getValue().put(what, new ByteTag(what, bool ? (byte) 1 : (byte) 0));
 	}
 
 	public void del(final String path)
 	{
-		final CompoundTag parent = (CompoundTag) findParent(path);
+		final NBTPath p = NBTPath.of(path);
+		final CompoundTag parent = findParent(p);
 		if(parent == null)
 		{
 			LOGGER.error("Unable to append string tag to parent, as parent is not found");
 			return;
 		}
 
-
-		final String what = extractLeafPath(path);
-		parent.getValue().remove(what);
+		parent.getValue().remove(p.getLeaf());
 	}
 	
 	public void addCompound(final CompoundTag tag)
@@ -341,11 +393,6 @@ public class NBTNavigator
 
 	protected static String extractLeafPath(final String path)
 	{
-		if(!path.contains("/"))
-		{
-			return path;
-		}
-
-		return path.substring(path.lastIndexOf("/") + 1);
+		return NBTPath.of(path).getLeaf();
 	}
 }
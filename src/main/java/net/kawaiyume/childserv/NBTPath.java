@@ -0,0 +1,146 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  NBTPath.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled path into a nbt tree, "folder/sub/leaf", split once and reused for each lookup.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public final class NBTPath
+{
+	public static final NBTPath ROOT = new NBTPath("", new String[0], null);
+
+	// paths compiled from strings, bounded as the names can come from commands
+	private static final int                  CACHE_LIMIT = 4096;
+	private static final Map<String, NBTPath> CACHE       = new ConcurrentHashMap<>();
+
+	private final String   path;
+	private final String[] segments;
+	private final NBTPath  parent;
+
+	private NBTPath(final String path, final String[] segments, final NBTPath parent)
+	{
+		this.path = path;
+		this.segments = segments;
+		this.parent = parent;
+	}
+
+	/**
+	 * Compile a "/" separated path, from the cache when already seen
+	 */
+	public static NBTPath of(final String path)
+	{
+		if(path == null || path.isEmpty())
+		{
+			return ROOT;
+		}
+
+		NBTPath ret = CACHE.get(path);
+		if(ret == null)
+		{
+			final int split = path.lastIndexOf('/');
+			final NBTPath parent = split < 0 ? ROOT : of(path.substring(0, split));
+			ret = parent.child(path.substring(split + 1));
+
+			if(CACHE.size() < CACHE_LIMIT)
+			{
+				CACHE.putIfAbsent(path, ret);
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Path of a child of this one, the name can contain a "/"
+	 */
+	public NBTPath child(final String name)
+	{
+		final String[] s = Arrays.copyOf(segments, segments.length + 1);
+		s[segments.length] = name;
+
+		return new NBTPath(segments.length == 0 ? name : path + "/" + name, s, this);
+	}
+
+	public NBTPath getParent()
+	{
+		return parent;
+	}
+
+	public String getLeaf()
+	{
+		return segments.length > 0 ? segments[segments.length - 1] : "";
+	}
+
+	public int size()
+	{
+		return segments.length;
+	}
+
+	public String get(final int index)
+	{
+		return segments[index];
+	}
+
+	public boolean isRoot()
+	{
+		return segments.length == 0;
+	}
+
+	@Override
+	public boolean equals(final Object obj)
+	{
+		return obj instanceof NBTPath && Arrays.equals(segments, ((NBTPath) obj).segments);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(segments);
+	}
+
+	@Override
+	public String toString()
+	{
+		return path;
+	}
+}
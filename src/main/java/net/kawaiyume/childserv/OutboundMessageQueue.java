@@ -0,0 +1,388 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  OutboundMessageQueue.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue the messages posted by the bot, the messages posted in a room during the window are merged into a single one.
+ * A room has at most one message on the way, so its messages keep their order, and the messages posted meanwhile are
+ * merged into the next one. A merged message refused by the homeserver is sent again one message at a time.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class OutboundMessageQueue
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboundMessageQueue.class);
+
+    // encoded size of the plain and formatted bodies of a message, the homeservers refuse the events over 64 KiB and this
+    // leaves room for the JSON escaping and the rest of the event ; a bigger message is cut
+    private static final int MAX_MESSAGE_BYTES = 32 * 1024;
+
+    @FunctionalInterface
+    public interface Sender
+    {
+        /**
+         * Send a message, the formatted body being null for a plain message.
+         */
+        CompletionStage<?> send(String roomId, String text, String formattedText);
+    }
+
+    @FunctionalInterface
+    public interface FailureHandler
+    {
+        void failed(String roomId, List<String> messages, Throwable error);
+    }
+
+    private final Sender sender;
+    private final FailureHandler failureHandler;
+    private final long windowMillis;
+
+    private final ScheduledExecutorService executor;
+
+    private final MarkdownEngine markdownEngine = new MarkdownEngine();
+
+    // rooms having messages waiting or on the way, guarded by this
+    private final Map<String, RoomQueue> rooms = new HashMap<>();
+
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+    public OutboundMessageQueue(final Sender sender, final FailureHandler failureHandler, final long windowMillis)
+    {
+        this.sender = sender;
+        this.failureHandler = failureHandler;
+        this.windowMillis = Math.max(0, windowMillis);
+
+        executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            final Thread t = new Thread(r, "OutboundMessages");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queue a message, the markdown ones are sent formatted. A message too big for a single event is sent in parts.
+     *
+     * @return completed once the message have been sent, merged or not
+     */
+    public CompletableFuture<Void> post(final String roomId, final String message, final boolean markdown)
+    {
+        final List<Message> parts = new ArrayList<>();
+        split(message, markdown, parts);
+        posted.incrementAndGet();
+        peakQueueDepth.accumulateAndGet(queueDepth.addAndGet(parts.size()), Math::max);
+
+        synchronized (this)
+        {
+            final RoomQueue queue = rooms.computeIfAbsent(roomId, RoomQueue::new);
+            queue.pending.addAll(parts);
+            if (!queue.scheduled && !queue.sending)
+            {
+                queue.scheduled = true;
+                executor.schedule(() -> send(queue), windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (parts.size() == 1)
+        {
+            return parts.get(0).done;
+        }
+        return CompletableFuture.allOf(parts.stream().map(m -> m.done).toArray(CompletableFuture[]::new));
+    }
+
+    // cut at the line end closest to the middle, or in the middle of a line too long, until each part fits in an event
+    private void split(final String text, final boolean markdown, final List<Message> parts)
+    {
+        final Message m = new Message(text, markdown, formatted(text, markdown));
+        if (m.size <= MAX_MESSAGE_BYTES || text.length() < 2)
+        {
+            parts.add(m);
+            return;
+        }
+
+        final int middle = text.length() / 2;
+        final int before = text.lastIndexOf('\n', middle);
+        final int after = text.indexOf('\n', middle);
+        int cut = before > 0 && (after < 0 || middle - before <= after - middle) ? before : after;
+        if (cut <= 0 || cut >= text.length() - 1)
+        {
+            cut = Character.isLowSurrogate(text.charAt(middle)) ? middle - 1 : middle;
+            split(text.substring(0, cut), markdown, parts);
+            split(text.substring(cut), markdown, parts);
+            return;
+        }
+
+        split(text.substring(0, cut), markdown, parts);
+        split(text.substring(cut + 1), markdown, parts);
+    }
+
+    private void send(final RoomQueue queue)
+    {
+        final List<Message> batch = new ArrayList<>();
+        synchronized (this)
+        {
+            queue.scheduled = false;
+            if (queue.sendAlone > 0 && !queue.pending.isEmpty())
+            {
+                queue.sendAlone--;
+                batch.add(queue.pending.poll());
+            }
+            else
+            {
+                int size = 0;
+                while (!queue.pending.isEmpty())
+                {
+                    final Message next = queue.pending.peek();
+                    if (!batch.isEmpty() && size + next.size > MAX_MESSAGE_BYTES)
+                    {
+                        break;
+                    }
+                    batch.add(queue.pending.poll());
+                    size += next.size;
+                }
+            }
+
+            if (batch.isEmpty())
+            {
+                rooms.remove(queue.roomId);
+                return;
+            }
+            queue.sending = true;
+        }
+        queueDepth.addAndGet(-batch.size());
+
+        try
+        {
+            sender.send(queue.roomId, text(batch), formattedText(batch)).whenComplete((r, e) -> sent(queue, batch, e));
+        }
+        catch (final RuntimeException e)
+        {
+            sent(queue, batch, e);
+        }
+    }
+
+    private void sent(final RoomQueue queue, final List<Message> batch, final Throwable error)
+    {
+        if (error == null)
+        {
+            sent.incrementAndGet();
+            batch.forEach(m -> m.done.complete(null));
+        }
+        else if (batch.size() > 1)
+        {
+            // the request scheduler already retried the rate limits, the merged message itself may be the problem
+            LOGGER.warn("{} :: unable to post {} merged messages, sending them one by one : {}", queue.roomId, batch.size(), error.toString());
+            queueDepth.addAndGet(batch.size());
+            synchronized (this)
+            {
+                for (int cpt = batch.size() - 1; cpt >= 0; cpt--)
+                {
+                    queue.pending.addFirst(batch.get(cpt));
+                }
+                queue.sendAlone += batch.size();
+            }
+        }
+        else
+        {
+            failed.incrementAndGet();
+
+            final List<String> messages = new ArrayList<>();
+            batch.forEach(m -> messages.add(m.text));
+            try
+            {
+                failureHandler.failed(queue.roomId, messages, error);
+            }
+            catch (final RuntimeException e)
+            {
+                LOGGER.error("{} :: unable to report a failed message", queue.roomId, e);
+            }
+            batch.forEach(m -> m.done.completeExceptionally(error));
+        }
+
+        synchronized (this)
+        {
+            queue.sending = false;
+            if (queue.pending.isEmpty())
+            {
+                rooms.remove(queue.roomId);
+            }
+            else
+            {
+                // the messages posted while sending have already waited
+                queue.scheduled = true;
+                executor.execute(() -> send(queue));
+            }
+        }
+    }
+
+    // the form of the message in the formatted body of a merged message, the plain lines are escaped
+    private String formatted(final String text, final boolean markdown)
+    {
+        return markdown ? markdownEngine.render(text).trim() : escape(text).replace("\n", "<br/>");
+    }
+
+    private static String text(final List<Message> batch)
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (final Message m : batch)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append('\n');
+            }
+            sb.append(m.text);
+        }
+
+        return sb.toString();
+    }
+
+    // null when there is no markdown message, the plain lines are escaped when merged with formatted ones
+    private String formattedText(final List<Message> batch)
+    {
+        if (batch.stream().noneMatch(m -> m.markdown))
+        {
+            return null;
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        for (final Message m : batch)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append("<br/>");
+            }
+            sb.append(m.formatted);
+        }
+
+        return sb.toString();
+    }
+
+    private static String escape(final String text)
+    {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    public int getQueueDepth()
+    {
+        return queueDepth.get();
+    }
+
+    public int getPeakQueueDepth()
+    {
+        return peakQueueDepth.get();
+    }
+
+    public long getPosted()
+    {
+        return posted.get();
+    }
+
+    public long getSent()
+    {
+        return sent.get();
+    }
+
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    private static final class Message
+    {
+        private final String text;
+        private final boolean markdown;
+        private final String formatted;
+
+        // encoded size of the message in both bodies, with the separator
+        private final int size;
+
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Message(final String text, final boolean markdown, final String formatted)
+        {
+            this.text = text;
+            this.markdown = markdown;
+            this.formatted = formatted;
+            this.size = text.getBytes(StandardCharsets.UTF_8).length + formatted.getBytes(StandardCharsets.UTF_8).length + "<br/>".length();
+        }
+    }
+
+    private static final class RoomQueue
+    {
+        private final String roomId;
+
+        private final Deque<Message> pending = new ArrayDeque<>();
+
+        // a send is scheduled, or a message is on the way
+        private boolean scheduled;
+        private boolean sending;
+
+        // the next messages are sent one by one, after a merged message failed
+        private int sendAlone;
+
+        private RoomQueue(final String roomId)
+        {
+            this.roomId = roomId;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  ReceiptCoalescer.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import io.github.ma1uta.matrix.client.model.receipt.ReadMarkersRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Keep only the newest event seen in each room and send its read markers from time to time, a receipt being made
+ * obsolete by the next one there is no need to send one per event.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class ReceiptCoalescer
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReceiptCoalescer.class);
+
+    // room id, request
+    private final BiFunction<String, ReadMarkersRequest, CompletionStage<?>> sender;
+
+    // room id, newest event not sent yet
+    private final Map<String, String> latest = new ConcurrentHashMap<>();
+
+    // rooms having a request on the way, the next one waits for it so they can't be reordered
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong marked = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public ReceiptCoalescer(final BiFunction<String, ReadMarkersRequest, CompletionStage<?>> sender)
+    {
+        this.sender = sender;
+    }
+
+    /**
+     * Send the markers every interval on the given executor.
+     */
+    public void start(final ScheduledExecutorService executor, final long intervalMillis)
+    {
+        executor.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Note the event as read, the events of a room being marked in timeline order.
+     */
+    public void mark(final String roomId, final String eventId)
+    {
+        marked.incrementAndGet();
+        latest.put(roomId, eventId);
+    }
+
+    /**
+     * Send the markers of the rooms having a new event, without waiting for the replies.
+     */
+    public void flush()
+    {
+        for (final String roomId : latest.keySet())
+        {
+            if (!inFlight.add(roomId))
+            {
+                continue;
+            }
+
+            final String eventId = latest.remove(roomId);
+            if (eventId == null)
+            {
+                inFlight.remove(roomId);
+                continue;
+            }
+
+            final ReadMarkersRequest request = new ReadMarkersRequest();
+            request.setFullyRead(eventId);
+            request.setRead(eventId);
+
+            try
+            {
+                sender.apply(roomId, request).whenComplete((r, e) -> sent(roomId, eventId, e));
+            }
+            catch (final RuntimeException e)
+            {
+                sent(roomId, eventId, e);
+            }
+        }
+    }
+
+    private void sent(final String roomId, final String eventId, final Throwable error)
+    {
+        if (error == null)
+        {
+            sent.incrementAndGet();
+        }
+        else
+        {
+            failed.incrementAndGet();
+            LOGGER.debug("{} :: unable to send the read markers : {}", roomId, error.getMessage());
+
+            // tried again with the next flush, unless a newer event came in
+            latest.putIfAbsent(roomId, eventId);
+        }
+
+        inFlight.remove(roomId);
+    }
+
+    public int getPending()
+    {
+        return latest.size();
+    }
+
+    public long getMarked()
+    {
+        return marked.get();
+    }
+
+    public long getSent()
+    {
+        return sent.get();
+    }
+
+    public long getFailed()
+    {
+        return failed.get();
+    }
+}
@@ -0,0 +1,198 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  RoomLaneDispatcher.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Run room tasks on a fixed set of lanes, a room is always mapped to the same lane so its tasks are run in the order they
+ * have been submitted, while the rooms mapped on other lanes are processed at the same time.
+ * <p>
+ * Each lane only holds a bounded count of waiting tasks : submitting to a full lane waits for room, so the sync loop can't
+ * run ahead of the slow rooms and its own bounded queue fills up instead.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class RoomLaneDispatcher
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(RoomLaneDispatcher.class);
+
+    private final Lane[] lanes;
+
+    public RoomLaneDispatcher(final int laneCount, final int laneCapacity)
+    {
+        if (laneCount < 1)
+        {
+            throw new IllegalArgumentException("At least one lane is needed");
+        }
+        if (laneCapacity < 1)
+        {
+            throw new IllegalArgumentException("A lane must hold at least one task");
+        }
+
+        lanes = new Lane[laneCount];
+        for (int cpt = 0; cpt < laneCount; cpt++)
+        {
+            lanes[cpt] = new Lane(cpt, laneCapacity);
+        }
+    }
+
+    public int getLaneCount()
+    {
+        return lanes.length;
+    }
+
+    public int laneOf(final String roomId)
+    {
+        return (roomId.hashCode() & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    /**
+     * Queue a task for a room, the returned future is completed when the task have been run, even if it failed.
+     * Waits while the lane of the room is full.
+     */
+    public CompletableFuture<Void> submit(final String roomId, final Runnable task)
+    {
+        final Lane lane = lanes[laneOf(roomId)];
+        lane.submitted.incrementAndGet();
+
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        lane.executor.execute(() ->
+        {
+            final long start = System.nanoTime();
+            try
+            {
+                task.run();
+            }
+            catch (final Exception e)
+            {
+                LOGGER.error("{} :: error while processing room events", roomId, e);
+            }
+            finally
+            {
+                lane.busyNanos.addAndGet(System.nanoTime() - start);
+                lane.processed.incrementAndGet();
+                done.complete(null);
+            }
+        });
+        lane.peakQueueDepth.accumulateAndGet(lane.executor.getQueue().size(), Math::max);
+
+        return done;
+    }
+
+    public int getQueueDepth(final int lane)
+    {
+        return lanes[lane].executor.getQueue().size();
+    }
+
+    public int getPeakQueueDepth(final int lane)
+    {
+        return lanes[lane].peakQueueDepth.get();
+    }
+
+    public long getSubmitted(final int lane)
+    {
+        return lanes[lane].submitted.get();
+    }
+
+    public long getProcessed(final int lane)
+    {
+        return lanes[lane].processed.get();
+    }
+
+    public long getBusyMillis(final int lane)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(lanes[lane].busyNanos.get());
+    }
+
+    public void shutdown()
+    {
+        for (final Lane lane : lanes)
+        {
+            lane.executor.shutdown();
+        }
+    }
+
+    private static final class Lane
+    {
+        private final ThreadPoolExecutor executor;
+
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+        private Lane(final int index, final int capacity)
+        {
+            executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity), r ->
+            {
+                final Thread thread = new Thread(r, "RoomLane-" + index);
+                thread.setDaemon(true);
+                return thread;
+            }, Lane::waitForRoom);
+            executor.prestartAllCoreThreads();
+        }
+
+        // a full lane makes the submitter wait, its single thread keeps taking the tasks from the queue
+        private static void waitForRoom(final Runnable task, final ThreadPoolExecutor executor)
+        {
+            if (executor.isShutdown())
+            {
+                throw new RejectedExecutionException("Lane is shut down");
+            }
+
+            try
+            {
+                executor.getQueue().put(task);
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for the lane", e);
+            }
+        }
+    }
+}
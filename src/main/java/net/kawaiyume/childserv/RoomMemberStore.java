@@ -0,0 +1,261 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  RoomMemberStore.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import io.github.ma1uta.matrix.client.MatrixClient;
+import io.github.ma1uta.matrix.event.Event;
+import io.github.ma1uta.matrix.event.StateEvent;
+import io.github.ma1uta.matrix.event.Unsigned;
+import io.github.ma1uta.matrix.event.content.EventContent;
+import io.github.ma1uta.matrix.event.content.RoomMemberContent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Membership state of the watched rooms, kept up to date from the m.room.member state deltas.
+ * <p>
+ * A room is seeded with its banned members only (a membership filtered members query), the joined members are learned from
+ * the deltas, the sync filter lazy loads the member events of the timeline senders. A join is told apart from a profile
+ * change with the previous membership carried by the event, so the full member list of a room is never downloaded.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class RoomMemberStore
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(RoomMemberStore.class);
+
+    public enum Change
+    {
+        JOINED,
+        PROFILE_CHANGED,
+        LEFT,
+        BANNED,
+        UNBANNED,
+        NONE
+    }
+
+    private static final class RoomMembers
+    {
+        private final Set<String> joined = ConcurrentHashMap.newKeySet();
+        private final Map<String, String> banned = new ConcurrentHashMap<>();
+    }
+
+    private final MatrixClient mxClient;
+
+    private final Map<String, RoomMembers> rooms = new ConcurrentHashMap<>();
+
+    private final BanIndex banIndex = new BanIndex();
+
+    public RoomMemberStore(final MatrixClient mxClient)
+    {
+        this.mxClient = mxClient;
+    }
+
+    /**
+     * (Re)load the banned members of a room, the joined members already known are kept.
+     */
+    public void load(final String roomId)
+    {
+        loaded(roomId, mxClient.event().members(roomId, RoomMemberContent.BAN, null).getChunk());
+    }
+
+    /**
+     * Same as {@link #load(String)}, without waiting for the reply.
+     */
+    public CompletableFuture<Void> loadAsync(final String roomId)
+    {
+        return mxClient.eventAsync().members(roomId, RoomMemberContent.BAN, null).thenAccept(response -> loaded(roomId, response.getChunk()));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void loaded(final String roomId, final List<Event> events)
+    {
+        final Map<String, String> banned = new ConcurrentHashMap<>();
+        if (events != null)
+        {
+            for (final Event e : events)
+            {
+                if (e instanceof StateEvent && ((StateEvent) e).getStateKey() != null)
+                {
+                    banned.put(((StateEvent) e).getStateKey(), reasonOf(e.getContent()));
+                }
+            }
+        }
+
+        final RoomMembers members = room(roomId);
+        members.banned.keySet().retainAll(banned.keySet());
+        members.banned.putAll(banned);
+        members.joined.removeAll(banned.keySet());
+        banIndex.replaceRoom(roomId, banned);
+
+        LOGGER.info("{} :: found {} banned users", roomId, banned.size());
+    }
+
+    public void forget(final String roomId)
+    {
+        rooms.remove(roomId);
+        banIndex.forgetRoom(roomId);
+    }
+
+    /**
+     * Apply a m.room.member event to the room state.
+     *
+     * @return the membership change, NONE when the event does not change what we know about the member
+     */
+    public Change apply(final String roomId, final Event<?> event)
+    {
+        if (!(event instanceof StateEvent) || !(event.getContent() instanceof RoomMemberContent))
+        {
+            return Change.NONE;
+        }
+
+        final StateEvent<?> stateEvent = (StateEvent<?>) event;
+        final String memberId = stateEvent.getStateKey() != null && !stateEvent.getStateKey().isEmpty() ? stateEvent.getStateKey() : stateEvent.getSender();
+        final RoomMemberContent content = (RoomMemberContent) event.getContent();
+        final RoomMembers members = room(roomId);
+
+        switch (content.getMembership())
+        {
+            case RoomMemberContent.JOIN:
+            {
+                if (members.banned.remove(memberId) != null)
+                {
+                    banIndex.unbanned(roomId, memberId);
+                }
+                final boolean added = members.joined.add(memberId);
+                return added && !RoomMemberContent.JOIN.equals(previousMembership(stateEvent)) ? Change.JOINED : Change.PROFILE_CHANGED;
+            }
+
+            case RoomMemberContent.LEAVE:
+            {
+                members.joined.remove(memberId);
+                // an unban is seen as a leave
+                if (members.banned.remove(memberId) != null)
+                {
+                    banIndex.unbanned(roomId, memberId);
+                    return Change.UNBANNED;
+                }
+                return Change.LEFT;
+            }
+
+            case RoomMemberContent.BAN:
+            {
+                members.joined.remove(memberId);
+                banIndex.banned(roomId, memberId, reasonOf(content));
+                return members.banned.put(memberId, reasonOf(content)) == null ? Change.BANNED : Change.NONE;
+            }
+
+            default:
+                return Change.NONE;
+        }
+    }
+
+    public boolean isBanned(final String roomId, final String memberId)
+    {
+        final RoomMembers members = rooms.get(roomId);
+        return members != null && members.banned.containsKey(memberId);
+    }
+
+    public Map<String, String> getBanned(final String roomId)
+    {
+        final RoomMembers members = rooms.get(roomId);
+        return members == null ? Collections.emptyMap() : Collections.unmodifiableMap(members.banned);
+    }
+
+    public int getKnownMembersCount(final String roomId)
+    {
+        final RoomMembers members = rooms.get(roomId);
+        return members == null ? 0 : members.joined.size();
+    }
+
+    public void banned(final String roomId, final String memberId, final String reason)
+    {
+        final RoomMembers members = room(roomId);
+        members.joined.remove(memberId);
+        members.banned.put(memberId, reason == null ? "" : reason);
+        banIndex.banned(roomId, memberId, reason);
+    }
+
+    public void unbanned(final String roomId, final String memberId)
+    {
+        room(roomId).banned.remove(memberId);
+        banIndex.unbanned(roomId, memberId);
+    }
+
+    public BanIndex getBanIndex()
+    {
+        return banIndex;
+    }
+
+    private RoomMembers room(final String roomId)
+    {
+        return rooms.computeIfAbsent(roomId, k -> new RoomMembers());
+    }
+
+    private static String previousMembership(final StateEvent<?> event)
+    {
+        // depending on the server the previous content is at the top level or in the unsigned data
+        if (event.getPrevContent() instanceof RoomMemberContent)
+        {
+            return ((RoomMemberContent) event.getPrevContent()).getMembership();
+        }
+
+        final Unsigned<?> unsigned = event.getUnsigned();
+        if (unsigned != null && unsigned.getPrevContent() instanceof RoomMemberContent)
+        {
+            return ((RoomMemberContent) unsigned.getPrevContent()).getMembership();
+        }
+        return null;
+    }
+
+    private static String reasonOf(final EventContent content)
+    {
+        if (content instanceof RoomMemberContent)
+        {
+            final String reason = ((RoomMemberContent) content).getReason();
+            return reason == null ? "" : reason;
+        }
+        return "";
+    }
+}
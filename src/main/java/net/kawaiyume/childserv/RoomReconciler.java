@@ -0,0 +1,258 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  RoomReconciler.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import io.github.ma1uta.matrix.client.MatrixClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Bring the joined rooms in line with the configured rooms at startup : the rooms to leave and the rooms to join are planned
+ * from both lists, then run at the same time (up to a bounded count of rooms in progress). A room is ready once joined and
+ * its members loaded.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class RoomReconciler
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(RoomReconciler.class);
+
+    public static final class Plan
+    {
+        private final List<String> leaves;
+        private final List<String> joins;
+        private final List<String> alreadyJoined;
+
+        private Plan(final List<String> leaves, final List<String> joins, final List<String> alreadyJoined)
+        {
+            this.leaves = Collections.unmodifiableList(leaves);
+            this.joins = Collections.unmodifiableList(joins);
+            this.alreadyJoined = Collections.unmodifiableList(alreadyJoined);
+        }
+
+        public List<String> getLeaves()
+        {
+            return leaves;
+        }
+
+        public List<String> getJoins()
+        {
+            return joins;
+        }
+
+        public List<String> getAlreadyJoined()
+        {
+            return alreadyJoined;
+        }
+    }
+
+    public static final class Progress
+    {
+        // true when the first configured room is ready, false once all of them are done without any being ready
+        private final CompletableFuture<Boolean> firstReady = new CompletableFuture<>();
+
+        private final CompletableFuture<Void> allDone;
+
+        private Progress(final List<CompletableFuture<Boolean>> rooms, final List<CompletableFuture<Boolean>> leaves)
+        {
+            rooms.forEach(room -> room.thenAccept(ready ->
+            {
+                if (ready)
+                {
+                    firstReady.complete(true);
+                }
+            }));
+            CompletableFuture.allOf(rooms.toArray(new CompletableFuture[0])).thenRun(() -> firstReady.complete(false));
+
+            // the leaves are done last, the reconciliation is only over once they are
+            final List<CompletableFuture<Boolean>> all = new ArrayList<>(rooms);
+            all.addAll(leaves);
+            allDone = CompletableFuture.allOf(all.toArray(new CompletableFuture[0]));
+        }
+
+        public CompletableFuture<Boolean> getFirstReady()
+        {
+            return firstReady;
+        }
+
+        public CompletableFuture<Void> getAllDone()
+        {
+            return allDone;
+        }
+    }
+
+    private final MatrixClient mxClient;
+
+    private final RoomMemberStore memberStore;
+
+    private final List<String> servers;
+
+    private final int parallelism;
+
+    // rooms waiting for one of the parallelism slots
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    // the members are loaded with blocking calls, they must not run on the http client threads
+    private final Executor executor;
+
+    public RoomReconciler(final MatrixClient mxClient, final RoomMemberStore memberStore, final List<String> servers, final int parallelism, final Executor executor)
+    {
+        this.mxClient = mxClient;
+        this.memberStore = memberStore;
+        this.servers = servers;
+        this.parallelism = parallelism;
+        this.executor = executor;
+    }
+
+    public static Plan plan(final Collection<String> joinedRooms, final Collection<String> configuredRooms, final boolean leave)
+    {
+        final Set<String> joined = new LinkedHashSet<>(joinedRooms);
+        final List<String> leaves = new ArrayList<>();
+        final List<String> joins = new ArrayList<>();
+        final List<String> alreadyJoined = new ArrayList<>();
+
+        if (leave)
+        {
+            joined.stream().filter(room -> !configuredRooms.contains(room)).forEach(leaves::add);
+        }
+        for (final String room : new LinkedHashSet<>(configuredRooms))
+        {
+            (joined.contains(room) ? alreadyJoined : joins).add(room);
+        }
+
+        return new Plan(leaves, joins, alreadyJoined);
+    }
+
+    /**
+     * Start the plan, the configured rooms are done first so the bot is answering as soon as possible.
+     */
+    public Progress run(final Plan plan)
+    {
+        LOGGER.info("Reconciling rooms : {} to join, {} already joined, {} to leave", plan.getJoins().size(), plan.getAlreadyJoined().size(), plan.getLeaves().size());
+
+        final List<CompletableFuture<Boolean>> rooms = new ArrayList<>();
+        plan.getAlreadyJoined().forEach(room -> rooms.add(start(room, () -> CompletableFuture.completedFuture(null), true)));
+        plan.getJoins().forEach(room -> rooms.add(start(room, () -> join(room), true)));
+
+        final List<CompletableFuture<Boolean>> leaves = new ArrayList<>();
+        plan.getLeaves().forEach(room -> leaves.add(start(room, () -> mxClient.roomAsync().leave(room).thenRun(() -> memberStore.forget(room)), false)));
+
+        final Progress progress = new Progress(rooms, leaves);
+
+        // each slot starts the next pending room when its room is done
+        for (int slot = 0; slot < parallelism; slot++)
+        {
+            executor.execute(this::next);
+        }
+
+        return progress;
+    }
+
+    private CompletableFuture<?> join(final String roomId)
+    {
+        if (servers == null || servers.isEmpty())
+        {
+            return mxClient.roomAsync().joinById(roomId, null);
+        }
+        return mxClient.roomAsync().joinByIdOrAlias(roomId, servers, null);
+    }
+
+    private CompletableFuture<Boolean> start(final String roomId, final Supplier<CompletableFuture<?>> action, final boolean loadMembers)
+    {
+        final CompletableFuture<Boolean> done = new CompletableFuture<>();
+        pending.add(() -> launch(roomId, action, loadMembers, done));
+        return done;
+    }
+
+    private void next()
+    {
+        final Runnable room = pending.poll();
+        if (room != null)
+        {
+            room.run();
+        }
+    }
+
+    private void launch(final String roomId, final Supplier<CompletableFuture<?>> action, final boolean loadMembers, final CompletableFuture<Boolean> done)
+    {
+        final long startTs = System.currentTimeMillis();
+        CompletableFuture<?> step;
+        try
+        {
+            step = action.get();
+        }
+        catch (final RuntimeException e)
+        {
+            final CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            step = failed;
+        }
+
+        if (loadMembers)
+        {
+            step = step.thenRunAsync(() -> memberStore.load(roomId), executor);
+        }
+
+        step.whenComplete((v, e) ->
+        {
+            if (e != null)
+            {
+                LOGGER.error("{} :: reconciliation failed after {} ms", roomId, System.currentTimeMillis() - startTs, e);
+            }
+            else
+            {
+                LOGGER.info("{} :: {} in {} ms", roomId, loadMembers ? "ready" : "left", System.currentTimeMillis() - startTs);
+            }
+
+            // the next room is handed to the executor before the last room completes the progress, which shuts it down
+            executor.execute(this::next);
+            done.complete(e == null);
+        });
+    }
+}
@@ -0,0 +1,181 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  SyncFilterCompiler.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.ma1uta.matrix.client.model.filter.EventFilter;
+import io.github.ma1uta.matrix.client.model.filter.FilterData;
+import io.github.ma1uta.matrix.client.model.filter.RoomEventFilter;
+import io.github.ma1uta.matrix.client.model.filter.RoomFilter;
+import io.github.ma1uta.matrix.event.RoomEncrypted;
+import io.github.ma1uta.matrix.event.RoomMember;
+import io.github.ma1uta.matrix.event.RoomMessage;
+import io.github.ma1uta.matrix.support.jackson.DefaultObjectMapperProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Build the server side sync filter from the event types we are handling, so the homeserver don't send us presence,
+ * account data, ephemeral events and the events that we will drop anyway.
+ * <p>
+ * The rooms are not listed : the bot only stays in the watched rooms and in its welcome rooms, and a welcome room is created
+ * for each new member, listing them would upload a new filter on each join and each leave.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public final class SyncFilterCompiler
+{
+    private static final List<String> NOTHING = Collections.singletonList("*");
+
+    // same serialization as the upload, with the properties in a stable order
+    private static final ObjectMapper FINGERPRINT_MAPPER = new DefaultObjectMapperProvider().get().copy().configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+
+    private SyncFilterCompiler()
+    {
+        // utility class
+    }
+
+    public static CompiledFilter compile(final Config config)
+    {
+        // commands may be sent encrypted, we only need them for the administration rooms
+        final boolean withEncrypted = config.getRooms().stream().anyMatch(room -> config.isRoomModeEnabled(room, Config.RoomMode.ADMINISTRATION));
+
+        final List<String> timelineTypes = new ArrayList<>();
+        timelineTypes.add(RoomMember.TYPE);
+        timelineTypes.add(RoomMessage.TYPE);
+        if (withEncrypted)
+        {
+            timelineTypes.add(RoomEncrypted.TYPE);
+        }
+
+        final RoomEventFilter timeline = new RoomEventFilter();
+        timeline.setTypes(timelineTypes);
+
+        final RoomFilter roomFilter = new RoomFilter();
+        roomFilter.setTimeline(timeline);
+        roomFilter.setState(lazyMembers());
+        roomFilter.setEphemeral(nothingInRoom());
+        roomFilter.setAccountData(nothingInRoom());
+
+        final FilterData filter = new FilterData();
+        filter.setEventFormat(FilterData.EventFormat.CLIENT);
+        filter.setRoom(roomFilter);
+        filter.setPresence(nothing());
+        filter.setAccountData(nothing());
+
+        return new CompiledFilter(filter, fingerprint(config.getUserId(), filter));
+    }
+
+    /**
+     * Hash of the serialized filter, any change of the filter gives a new fingerprint. Filters are stored per user on the
+     * homeserver, so the user is part of it.
+     */
+    static String fingerprint(final String userId, final FilterData filter)
+    {
+        try
+        {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((userId + "|").getBytes(StandardCharsets.UTF_8));
+            final byte[] hash = digest.digest(FINGERPRINT_MAPPER.writeValueAsBytes(filter));
+
+            final StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (final byte b : hash)
+            {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+        catch (final NoSuchAlgorithmException | JsonProcessingException e)
+        {
+            throw new IllegalStateException("Unable to fingerprint the sync filter", e);
+        }
+    }
+
+    private static EventFilter nothing()
+    {
+        final EventFilter f = new EventFilter();
+        f.setNotTypes(NOTHING);
+        return f;
+    }
+
+    // only the member events of the timeline senders, the member store is seeded apart
+    private static RoomEventFilter lazyMembers()
+    {
+        final RoomEventFilter f = new RoomEventFilter();
+        f.setTypes(Collections.singletonList(RoomMember.TYPE));
+        f.setLazyLoadMembers(true);
+        return f;
+    }
+
+    private static RoomEventFilter nothingInRoom()
+    {
+        final RoomEventFilter f = new RoomEventFilter();
+        f.setNotTypes(NOTHING);
+        return f;
+    }
+
+    public static final class CompiledFilter
+    {
+        private final FilterData filter;
+
+        // hash of the serialized filter, used to know if the uploaded one is still valid
+        private final String fingerprint;
+
+        private CompiledFilter(final FilterData filter, final String fingerprint)
+        {
+            this.filter = filter;
+            this.fingerprint = fingerprint;
+        }
+
+        public FilterData getFilter()
+        {
+            return filter;
+        }
+
+        public String getFingerprint()
+        {
+            return fingerprint;
+        }
+    }
+}
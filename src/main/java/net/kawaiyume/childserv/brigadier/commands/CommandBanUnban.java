@@ -79,8 +79,14 @@ public final class CommandBanUnban
         LOGGER.info("{} banned user {} from all rooms", source.getMemberId(), memberId);
 
         final Config botConfig = source.getChildServ().getConfig();
-        botConfig.getRooms().forEach(room ->
+        for (final String room : botConfig.getRooms())
         {
+            // cancelled or timed out, the rooms left are not touched
+            if (Thread.currentThread().isInterrupted())
+            {
+                return 0;
+            }
+
             if (botConfig.isRoomModeEnabled(room, Config.RoomMode.BANLIST_SYNC) && (botConfig.isRoomModeEnabled(room, Config.RoomMode.SELF_MODERATOR) || botConfig.isRoomModeEnabled(room, Config.RoomMode.SELF_ADMINISTRATOR)))
             {
                 if(source.getChildServ().banUser(room, memberId, reason))
@@ -88,7 +94,7 @@ public final class CommandBanUnban
                     source.getChildServ().post(source.getRoomId(), "Banning " + memberId + " from room " + room);
                 }
             }
-        });
+        }
 
         return 1;
     }
@@ -98,8 +104,14 @@ public final class CommandBanUnban
         LOGGER.info("{} un-banned user {} from all rooms", source.getMemberId(), memberId);
 
         final Config botConfig = source.getChildServ().getConfig();
-        botConfig.getRooms().forEach(room ->
+        for (final String room : botConfig.getRooms())
         {
+            // cancelled or timed out, the rooms left are not touched
+            if (Thread.currentThread().isInterrupted())
+            {
+                return 0;
+            }
+
             if (botConfig.isRoomModeEnabled(room, Config.RoomMode.BANLIST_SYNC) && (botConfig.isRoomModeEnabled(room, Config.RoomMode.SELF_MODERATOR) || botConfig.isRoomModeEnabled(room, Config.RoomMode.SELF_ADMINISTRATOR)))
             {
                 if(source.getChildServ().unbanUser(room, memberId))
@@ -107,7 +119,7 @@ public final class CommandBanUnban
                     source.getChildServ().post(source.getRoomId(), "Un-banning " + memberId + " from room " + room);
                 }
             }
-        });
+        }
 
         return 1;
     }
@@ -65,11 +65,16 @@ public final class CommandLife
         {
             Thread.sleep(TimeUnit.SECONDS.toMillis(5));
         }
-        catch (final InterruptedException ignored)
+        catch (final InterruptedException e)
         {
+            // cancelled from the room
             Thread.currentThread().interrupt();
+            return 0;
         }
 
+        // don't lose the changes still waiting to be written
+        source.getChildServ().getConfig().flush();
+
         System.exit(0);
 
         return 1;
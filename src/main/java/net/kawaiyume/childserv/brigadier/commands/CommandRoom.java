@@ -115,6 +115,7 @@ public final class CommandRoom
         source.getChildServ().getConfig().addRoom(roomId);
         source.getChildServ().post(source.getRoomId(), "Room " + roomId + " added.");
         source.getChildServ().joinRoom(roomId);
+        source.getChildServ().refreshSyncFilter();
 
         return 1;
     }
@@ -126,6 +127,7 @@ public final class CommandRoom
         source.getChildServ().getConfig().delRoom(roomId);
         source.getChildServ().post(source.getRoomId(), "Room " + roomId + " removed.");
         source.getChildServ().leaveRoom(roomId);
+        source.getChildServ().refreshSyncFilter();
 
         return 1;
     }
@@ -162,6 +164,7 @@ public final class CommandRoom
         LOGGER.info("{} have added mode {} to room {}", source.getMemberId(), mode.name(), roomId);
 
         source.getChildServ().getConfig().addRoomMode(roomId, mode);
+        source.getChildServ().refreshSyncFilter();
         source.getChildServ().post(source.getRoomId(), "Mode " + mode.name() + " added to room " + roomId);
 
         return 1;
@@ -172,6 +175,7 @@ public final class CommandRoom
         LOGGER.info("{} have removed mode {} from room {}", source.getMemberId(), mode.name(), roomId);
 
         source.getChildServ().getConfig().delRoomMode(roomId, mode);
+        source.getChildServ().refreshSyncFilter();
         source.getChildServ().post(source.getRoomId(), "Mode " + mode.name() + " removed from room " + roomId);
 
         return 1;
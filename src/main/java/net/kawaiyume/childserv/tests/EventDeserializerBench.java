@@ -0,0 +1,220 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  EventDeserializerBench.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv.tests;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import io.github.ma1uta.matrix.client.model.sync.JoinedRoom;
+import io.github.ma1uta.matrix.client.model.sync.SyncResponse;
+import io.github.ma1uta.matrix.event.Event;
+import io.github.ma1uta.matrix.event.RawEvent;
+import io.github.ma1uta.matrix.support.jackson.DefaultObjectMapperProvider;
+import io.github.ma1uta.matrix.support.jackson.EventDeserializer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Time the parse of a large sync response and count the bytes it allocates, with the former tree based event
+ * deserializer and with the token buffer one, run with the number of rooms as argument.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class EventDeserializerBench
+{
+    private static final int WARMUP = 30;
+    private static final int ROUNDS = 50;
+
+    private static final int TIMELINE_EVENTS = 50;
+
+    public static void main(final String[] args) throws IOException
+    {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        final byte[] sync = buildSync(size);
+        System.out.printf("sync response of %d rooms, %d bytes%n", size, sync.length);
+
+        final ObjectMapper tree = new DefaultObjectMapperProvider(false, Collections.emptySet()).get().copy();
+        tree.registerModule(new SimpleModule("Tree events").addDeserializer(Event.class, new TreeEventDeserializer()));
+
+        bench("tree", tree, sync);
+        bench("token buffer", new DefaultObjectMapperProvider(false, Collections.emptySet()).get(), sync);
+        bench("token buffer, lazy content", new DefaultObjectMapperProvider(true, Collections.emptySet()).get(), sync);
+        bench("token buffer, lazy, skipped types", new DefaultObjectMapperProvider(true, new HashSet<>(Arrays.asList("m.receipt", "m.typing", "m.presence", "m.reaction"))).get(), sync);
+    }
+
+    private static void bench(final String name, final ObjectMapper mapper, final byte[] sync) throws IOException
+    {
+        SyncResponse response = null;
+        for (int cpt = 0; cpt < WARMUP; cpt++)
+        {
+            response = mapper.readValue(sync, SyncResponse.class);
+        }
+
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        for (int cpt = 0; cpt < ROUNDS; cpt++)
+        {
+            response = mapper.readValue(sync, SyncResponse.class);
+        }
+        final long elapsed = (System.nanoTime() - start) / ROUNDS;
+        final long allocated = (allocatedBytes() - allocatedBefore) / ROUNDS;
+
+        System.out.printf("%-34s : %6d us, %8d KiB allocated, %d timeline events%n", name, elapsed / 1000, allocated / 1024, countTimelineEvents(response));
+    }
+
+    private static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static int countTimelineEvents(final SyncResponse response)
+    {
+        int count = 0;
+        for (final JoinedRoom room : response.getRooms().getJoin().values())
+        {
+            count += room.getTimeline().getEvents().size();
+        }
+        return count;
+    }
+
+    // joined rooms with messages, members and reactions, their state, typing and receipts, plus the presence of the senders
+    private static byte[] buildSync(final int size)
+    {
+        final StringBuilder sb = new StringBuilder("{\"next_batch\":\"s1_2_3\",\"rooms\":{\"join\":{");
+        for (int room = 0; room < size; room++)
+        {
+            if (room > 0)
+            {
+                sb.append(',');
+            }
+            sb.append("\"!room").append(room).append(":matrix.example.org\":{\"state\":{\"events\":[");
+            for (int member = 0; member < 5; member++)
+            {
+                if (member > 0)
+                {
+                    sb.append(',');
+                }
+                member(sb, room, member);
+            }
+            sb.append("]},\"timeline\":{\"limited\":false,\"prev_batch\":\"p").append(room).append("\",\"events\":[");
+            for (int event = 0; event < TIMELINE_EVENTS; event++)
+            {
+                if (event > 0)
+                {
+                    sb.append(',');
+                }
+                switch (event % 5)
+                {
+                    case 0:
+                        member(sb, room, event);
+                        break;
+                    case 1:
+                        sb.append("{\"type\":\"m.reaction\",\"event_id\":\"$r").append(room).append('_').append(event)
+                            .append("\",\"sender\":\"@user").append(event).append(":matrix.example.org\",\"origin_server_ts\":1600000000000,")
+                            .append("\"content\":{\"m.relates_to\":{\"rel_type\":\"m.annotation\",\"event_id\":\"$m").append(room).append("\",\"key\":\"+1\"}}}");
+                        break;
+                    default:
+                        sb.append("{\"type\":\"m.room.message\",\"event_id\":\"$m").append(room).append('_').append(event)
+                            .append("\",\"sender\":\"@user").append(event).append(":matrix.example.org\",\"origin_server_ts\":1600000000000,")
+                            .append("\"unsigned\":{\"age\":1234},\"content\":{\"msgtype\":\"m.text\",\"body\":\"Hello everybody, message ").append(event)
+                            .append(" of the room\",\"format\":\"org.matrix.custom.html\",\"formatted_body\":\"<p>Hello <b>everybody</b>, message ").append(event)
+                            .append(" of the room</p>\"}}");
+                        break;
+                }
+            }
+            sb.append("]},\"ephemeral\":{\"events\":[{\"type\":\"m.typing\",\"content\":{\"user_ids\":[\"@user1:matrix.example.org\"]}},")
+                .append("{\"type\":\"m.receipt\",\"content\":{\"$m").append(room).append("_2\":{\"m.read\":{\"@user1:matrix.example.org\":{\"ts\":1600000000000}}}}}]}}");
+        }
+        sb.append("}},\"presence\":{\"events\":[");
+        for (int user = 0; user < size; user++)
+        {
+            if (user > 0)
+            {
+                sb.append(',');
+            }
+            sb.append("{\"type\":\"m.presence\",\"sender\":\"@user").append(user).append(":matrix.example.org\",\"content\":{\"presence\":\"online\",\"last_active_ago\":1000}}");
+        }
+        sb.append("]}}");
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void member(final StringBuilder sb, final int room, final int member)
+    {
+        sb.append("{\"type\":\"m.room.member\",\"event_id\":\"$j").append(room).append('_').append(member)
+            .append("\",\"sender\":\"@user").append(member).append(":matrix.example.org\",\"state_key\":\"@user").append(member)
+            .append(":matrix.example.org\",\"origin_server_ts\":1600000000000,\"content\":{\"membership\":\"join\",\"displayname\":\"User ")
+            .append(member).append("\"}}");
+    }
+
+    /**
+     * The event deserializer as it was before the token buffer : the whole event is read as a tree, then bound.
+     */
+    private static final class TreeEventDeserializer extends EventDeserializer
+    {
+        @Override
+        @SuppressWarnings("unchecked")
+        public Event deserialize(final JsonParser parser, final DeserializationContext ctxt) throws IOException
+        {
+            final ObjectCodec codec = parser.getCodec();
+            final JsonNode node = codec.readTree(parser);
+
+            final JsonNode type = node.get("type");
+            if (type == null || !type.isTextual())
+            {
+                return new RawEvent(codec.treeToValue(node, Map.class), null);
+            }
+
+            final Class<? extends Event> eventClass = eventClass(type.asText());
+            if (eventClass == null)
+            {
+                return new RawEvent(codec.treeToValue(node, Map.class), type.asText());
+            }
+
+            return codec.treeToValue(node, eventClass);
+        }
+    }
+}
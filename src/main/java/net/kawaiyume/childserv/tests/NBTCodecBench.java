@@ -0,0 +1,127 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  NBTCodecBench.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv.tests;
+
+import net.kawaiyume.childserv.NBTHelper;
+import org.jnbt.CompoundTag;
+import org.jnbt.ListTag;
+import org.jnbt.NBTCompression;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Time the write and read of a large config like tree with each compression, run with the tree size as argument.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class NBTCodecBench
+{
+    private static final int WARMUP = 20;
+    private static final int ROUNDS = 50;
+
+    public static void main(final String[] args)
+    {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        final CompoundTag root = buildTree(size);
+
+        bench(root, NBTCompression.NONE, Deflater.DEFAULT_COMPRESSION);
+        bench(root, NBTCompression.GZIP, Deflater.BEST_SPEED);
+        bench(root, NBTCompression.GZIP, Deflater.DEFAULT_COMPRESSION);
+        bench(root, NBTCompression.DEFLATE, Deflater.BEST_SPEED);
+        bench(root, NBTCompression.DEFLATE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private static void bench(final CompoundTag root, final NBTCompression compression, final int level)
+    {
+        byte[] data = null;
+        for (int cpt = 0; cpt < WARMUP; cpt++)
+        {
+            data = NBTHelper.writeBytes(root, compression, level);
+            NBTHelper.readBytes(data, compression);
+        }
+
+        long start = System.nanoTime();
+        for (int cpt = 0; cpt < ROUNDS; cpt++)
+        {
+            data = NBTHelper.writeBytes(root, compression, level);
+        }
+        final long write = (System.nanoTime() - start) / ROUNDS;
+
+        start = System.nanoTime();
+        for (int cpt = 0; cpt < ROUNDS; cpt++)
+        {
+            NBTHelper.readBytes(data, compression);
+        }
+        final long read = (System.nanoTime() - start) / ROUNDS;
+
+        System.out.printf("%-8s level %2d : %8d bytes, write %6d us, read %6d us%n", compression, level, data.length, write / 1000, read / 1000);
+    }
+
+    // rooms with modes and params, plus vars, like the bot config
+    private static CompoundTag buildTree(final int size)
+    {
+        final CompoundTag rooms = new CompoundTag("rooms");
+        final CompoundTag vars = new CompoundTag("vars");
+        for (int cpt = 0; cpt < size; cpt++)
+        {
+            final String roomId = "!room" + cpt + ":matrix.example.org";
+            final CompoundTag room = new CompoundTag(roomId);
+
+            final List<Tag<?>> modes = new ArrayList<>();
+            modes.add(new StringTag(null, "WELCOME"));
+            modes.add(new StringTag(null, "BANLIST_SYNC"));
+            room.put(new ListTag("modes", StringTag.class, modes));
+
+            final CompoundTag params = new CompoundTag("params");
+            params.put(new StringTag("WELCOME", "Welcome to room " + cpt + ", please read the rules first."));
+            room.put(params);
+
+            rooms.put(room);
+            vars.put(new StringTag("var" + cpt, "value of the variable number " + cpt));
+        }
+
+        final CompoundTag root = new CompoundTag("root");
+        root.put(rooms);
+        root.put(vars);
+
+        return root;
+    }
+}
@@ -0,0 +1,145 @@
+/* vim: set filetype=java: ts=4: sw=4: */
+/*
+  Copyright (c) 2026, kawaiyume.net
+  All rights reserved.
+
+  Redistribution and use in source and binary forms, with or without
+  modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+  notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+  notice, this list of conditions and the following disclaimer in the
+  documentation and/or other materials provided with the distribution.
+
+  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY
+  DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/*
+  ----------------------------------------------------------------------------
+  18 october 2026
+  ----------------------------------------------------------------------------
+  NBTLazyReadCheck.java
+  ----------------------------------------------------------------------------
+  <TAB> = 4 <space>
+  ----------------------------------------------------------------------------
+ */
+
+package net.kawaiyume.childserv.tests;
+
+import net.kawaiyume.childserv.NBTHelper;
+import net.kawaiyume.childserv.NBTLazyNavigator;
+import net.kawaiyume.childserv.NBTNavigator;
+import org.jnbt.CompoundTag;
+import org.jnbt.IntTag;
+import org.jnbt.ListTag;
+import org.jnbt.StringTag;
+import org.jnbt.Tag;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Compare the reads of {@link NBTLazyNavigator} with the ones of {@link NBTNavigator} on a generated file, then time the
+ * read of a single room both ways, run with the number of rooms as argument.
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public class NBTLazyReadCheck
+{
+    private static final int ROUNDS = 50;
+
+    public static void main(final String[] args) throws IOException
+    {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        final File file = File.createTempFile("lazy", ".dat");
+        file.deleteOnExit();
+        if (!NBTHelper.writeFile(buildTree(size), file))
+        {
+            throw new IOException("Unable to write " + file);
+        }
+
+        final NBTNavigator eager = new NBTNavigator(file);
+        final NBTLazyNavigator lazy = new NBTLazyNavigator(file);
+
+        int mismatches = 0;
+        for (int cpt = 0; cpt < size; cpt++)
+        {
+            final String room = "rooms/!room" + cpt + ":matrix.example.org";
+            mismatches += check(room, eager.getCompound(room), lazy.getCompound(room));
+            mismatches += check(room + "/modes", eager.findTag(room + "/modes"), lazy.findTag(room + "/modes"));
+            mismatches += check(room + "/params/WELCOME", eager.findTag(room + "/params/WELCOME"), lazy.findTag(room + "/params/WELCOME"));
+            mismatches += check("vars/var" + cpt, eager.findTag("vars/var" + cpt), lazy.findTag("vars/var" + cpt));
+        }
+        mismatches += check("missing", eager.findTag("rooms/missing/params"), lazy.findTag("rooms/missing/params"));
+        mismatches += check("count", eager.findTag("count"), lazy.findTag("count"));
+        mismatches += check("keys", new TreeSet<>(eager.getCompound("rooms").getValue().keySet()), new TreeSet<>(lazy.keys("rooms")));
+        System.out.printf("%d rooms compared, %d mismatches%n", size, mismatches);
+
+        final String last = "rooms/!room" + (size - 1) + ":matrix.example.org";
+        long start = System.nanoTime();
+        for (int cpt = 0; cpt < ROUNDS; cpt++)
+        {
+            new NBTNavigator(file).getCompound(last);
+        }
+        final long full = (System.nanoTime() - start) / ROUNDS;
+
+        start = System.nanoTime();
+        for (int cpt = 0; cpt < ROUNDS; cpt++)
+        {
+            new NBTLazyNavigator(file).getCompound(last);
+        }
+        final long inPlace = (System.nanoTime() - start) / ROUNDS;
+
+        System.out.printf("one room out of %d : full read %6d us, in place %6d us%n", size, full / 1000, inPlace / 1000);
+    }
+
+    private static int check(final String what, final Object expected, final Object actual)
+    {
+        if (Objects.equals(String.valueOf(expected), String.valueOf(actual)))
+        {
+            return 0;
+        }
+
+        System.out.printf("%s : expected %s, got %s%n", what, expected, actual);
+        return 1;
+    }
+
+    // same shape as the bot config
+    private static CompoundTag buildTree(final int size)
+    {
+        final CompoundTag rooms = new CompoundTag("rooms");
+        final CompoundTag vars = new CompoundTag("vars");
+        for (int cpt = 0; cpt < size; cpt++)
+        {
+            final CompoundTag room = new CompoundTag("!room" + cpt + ":matrix.example.org");
+            room.put(new ListTag("modes", StringTag.class, Collections.singletonList(new StringTag(null, "WELCOME"))));
+
+            final CompoundTag params = new CompoundTag("params");
+            params.put(new StringTag("WELCOME", "Welcome to room " + cpt));
+            room.put(params);
+
+            rooms.put(room);
+            vars.put(new StringTag("var" + cpt, "value " + cpt));
+        }
+
+        final CompoundTag root = new CompoundTag("root");
+        root.put(rooms);
+        root.put(vars);
+        root.put(new IntTag("count", size));
+
+        return root;
+    }
+}
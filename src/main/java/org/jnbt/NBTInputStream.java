@@ -37,6 +37,7 @@ package org.jnbt;
 
 // @formatter:on
 
+import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -44,6 +45,8 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * <p>
@@ -65,6 +68,16 @@ public final class NBTInputStream implements Closeable
 	 */
 	private final DataInputStream is;
 
+	/**
+	 * Size of the buffer behind the decompressor, so the tiny reads of the tags don't each reach the inflater.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The inflater created by this stream, if any.
+	 */
+	private final Inflater inflater;
+
 	/**
 	 * Creates a new <code>NBTInputStream</code>, which will source its data
 	 * from the specified input stream.
@@ -77,15 +90,44 @@ public final class NBTInputStream implements Closeable
 	 * @throws IOException
 	 * 	if an I/O error occurs.
 	 */
-	public NBTInputStream(InputStream is, final boolean gzipped) throws IOException
+	public NBTInputStream(final InputStream is, final boolean gzipped) throws IOException
 	{
-		if(gzipped)
+		this(is, gzipped ? NBTCompression.GZIP : NBTCompression.NONE);
+	}
+
+	/**
+	 * Creates a new <code>NBTInputStream</code>, which will source its data
+	 * from the specified input stream, through a buffer.
+	 *
+	 * @param is
+	 * 	The input stream.
+	 * @param compression
+	 * 	The compression of the stream.
+	 *
+	 * @throws IOException
+	 * 	if an I/O error occurs.
+	 */
+	public NBTInputStream(final InputStream is, final NBTCompression compression) throws IOException
+	{
+		final InputStream in;
+		switch(compression)
 		{
-			is = new GZIPInputStream(is);
+			case GZIP:
+				inflater = null;
+				in = new GZIPInputStream(is, BUFFER_SIZE);
+				break;
+			case DEFLATE:
+				inflater = new Inflater(true);
+				in = new InflaterInputStream(is, inflater, BUFFER_SIZE);
+				break;
+			default:
+				inflater = null;
+				in = is;
+				break;
 		}
-		this.is = new DataInputStream(is);
-	}
 
+		this.is = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+	}
 	/**
 	 * Creates a new <code>NBTInputStream</code>, which will source its data
 	 * from the specified GZIP-compressed input stream.
@@ -98,7 +140,7 @@ public final class NBTInputStream implements Closeable
 	 */
 	public NBTInputStream(final InputStream is) throws IOException
 	{
-		this.is = new DataInputStream(new GZIPInputStream(is));
+		this(is, NBTCompression.GZIP);
 	}
 
 	// TODO: comment this. supports raw Gziped data.
@@ -106,6 +148,7 @@ public final class NBTInputStream implements Closeable
 	public NBTInputStream(final DataInputStream is)
 	{
 		this.is = is;
+		this.inflater = null;
 	}
 
 	/**
@@ -250,6 +293,16 @@ public final class NBTInputStream implements Closeable
 	@Override
 	public void close() throws IOException
 	{
-		is.close();
+		try
+		{
+			is.close();
+		}
+		finally
+		{
+			if(inflater != null)
+			{
+				inflater.end();
+			}
+		}
 	}
 }
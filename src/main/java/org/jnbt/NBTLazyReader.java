@@ -0,0 +1,439 @@
+package org.jnbt;
+
+// @formatter:off
+
+/*
+ * JNBT License
+ *
+ * Copyright (c) 2010 Graham Edgecombe
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the JNBT team nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+// @formatter:on
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>
+ * Reads <strong>NBT</strong> in place from a <code>ByteBuffer</code>, without building the whole object graph.
+ * </p>
+ *
+ * <p>
+ * The children of a compound are indexed by name, on their first access, with the offset where they start. A child
+ * is only decoded when it is asked for, and the nested compounds can be walked without decoding anything.
+ * </p>
+ *
+ * @author iXô (ixo@kawaiyume.net)
+ */
+public final class NBTLazyReader
+{
+	/**
+	 * The uncompressed NBT data.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The root compound.
+	 */
+	private final Compound root;
+
+	/**
+	 * Creates a new <code>NBTLazyReader</code> over uncompressed NBT data, starting at the buffer position.
+	 *
+	 * @param buffer
+	 * 	The data, not copied.
+	 *
+	 * @throws IOException
+	 * 	if the data don't start with a compound tag.
+	 */
+	public NBTLazyReader(final ByteBuffer buffer) throws IOException
+	{
+		this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+
+		final int start = buffer.position();
+		if((this.buffer.get(start) & 0xFF) != NBTConstants.TYPE_COMPOUND)
+		{
+			throw new IOException("[JNBT] The root tag must be a TAG_Compound.");
+		}
+
+		final int nameLength = this.buffer.getShort(start + 1) & 0xFFFF;
+		root = new Compound(readString(start + 3, nameLength), start + 3 + nameLength);
+	}
+
+	/**
+	 * Opens a NBT file, an uncompressed file is mapped in memory, a GZip-compressed file is inflated in memory first.
+	 *
+	 * @param file
+	 * 	The file.
+	 *
+	 * @return The reader.
+	 *
+	 * @throws IOException
+	 * 	if an I/O error occurs.
+	 */
+	public static NBTLazyReader open(final File file) throws IOException
+	{
+		try(final RandomAccessFile raf = new RandomAccessFile(file, "r"))
+		{
+			final FileChannel channel = raf.getChannel();
+			final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if(mapped.remaining() >= 2 && (mapped.get(0) & 0xFF) == 0x1F && (mapped.get(1) & 0xFF) == 0x8B)
+			{
+				return new NBTLazyReader(inflate(mapped));
+			}
+
+			return new NBTLazyReader(mapped);
+		}
+	}
+
+	/**
+	 * Gets the root compound.
+	 *
+	 * @return The root compound.
+	 */
+	public Compound getRoot()
+	{
+		return root;
+	}
+
+	private static ByteBuffer inflate(final ByteBuffer compressed) throws IOException
+	{
+		try(final InputStream in = new GZIPInputStream(new ByteBufferInputStream(compressed, 0), 8192))
+		{
+			byte[] data = new byte[Math.max(1024, compressed.remaining() * 4)];
+			int length = 0;
+			int read;
+			while((read = in.read(data, length, data.length - length)) != -1)
+			{
+				length += read;
+				if(length == data.length)
+				{
+					final byte[] bigger = new byte[data.length * 2];
+					System.arraycopy(data, 0, bigger, 0, length);
+					data = bigger;
+				}
+			}
+
+			return ByteBuffer.wrap(data, 0, length);
+		}
+	}
+
+	private String readString(final int offset, final int length)
+	{
+		final byte[] bytes = new byte[length];
+		final ByteBuffer b = buffer.duplicate();
+		b.position(offset);
+		b.get(bytes);
+
+		return new String(bytes, NBTConstants.CHARSET);
+	}
+
+	/**
+	 * Gets the offset right after the payload of a tag.
+	 */
+	private int skipPayload(final int type, final int offset) throws IOException
+	{
+		switch(type)
+		{
+			case NBTConstants.TYPE_BYTE:
+				return offset + 1;
+			case NBTConstants.TYPE_SHORT:
+				return offset + 2;
+			case NBTConstants.TYPE_INT:
+			case NBTConstants.TYPE_FLOAT:
+				return offset + 4;
+			case NBTConstants.TYPE_LONG:
+			case NBTConstants.TYPE_DOUBLE:
+				return offset + 8;
+			case NBTConstants.TYPE_BYTE_ARRAY:
+				return offset + 4 + buffer.getInt(offset);
+			case NBTConstants.TYPE_STRING:
+				return offset + 2 + (buffer.getShort(offset) & 0xFFFF);
+			case NBTConstants.TYPE_INT_ARRAY:
+				return offset + 4 + 4 * buffer.getInt(offset);
+			case NBTConstants.TYPE_LIST:
+				final int childType = buffer.get(offset);
+				final int length = buffer.getInt(offset + 1);
+				int pos = offset + 5;
+				for(int i = 0; i < length; i++)
+				{
+					pos = skipPayload(childType, pos);
+				}
+				return pos;
+			case NBTConstants.TYPE_COMPOUND:
+				int child = offset;
+				int childTagType;
+				while((childTagType = buffer.get(child) & 0xFF) != NBTConstants.TYPE_END)
+				{
+					final int nameLength = buffer.getShort(child + 1) & 0xFFFF;
+					child = skipPayload(childTagType, child + 3 + nameLength);
+				}
+				return child + 1;
+			default:
+				throw new IOException("[JNBT] Invalid tag type: " + type + ".");
+		}
+	}
+
+	/**
+	 * A compound tag read in place.
+	 */
+	public final class Compound
+	{
+		/**
+		 * The name of the compound.
+		 */
+		private final String name;
+
+		/**
+		 * The offset of the first child.
+		 */
+		private final int payload;
+
+		/**
+		 * The offset where each child starts, built on first access.
+		 */
+		private Map<String, Integer> index;
+
+		/**
+		 * The child compounds already reached, so their index is kept.
+		 */
+		private final Map<String, Compound> compounds = new HashMap<>();
+
+		private Compound(final String name, final int payload)
+		{
+			this.name = name;
+			this.payload = payload;
+		}
+
+		/**
+		 * Gets the name of the compound.
+		 *
+		 * @return The name.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * Gets the names of the children, in file order.
+		 *
+		 * @return The names.
+		 *
+		 * @throws IOException
+		 * 	if the data is malformed.
+		 */
+		public Set<String> keys() throws IOException
+		{
+			return Collections.unmodifiableSet(index().keySet());
+		}
+
+		/**
+		 * Checks if a child is present.
+		 *
+		 * @param key
+		 * 	The name of the child.
+		 *
+		 * @return true if present.
+		 *
+		 * @throws IOException
+		 * 	if the data is malformed.
+		 */
+		public boolean containsKey(final String key) throws IOException
+		{
+			return index().containsKey(key);
+		}
+
+		/**
+		 * Gets the type of a child, see {@link NBTConstants}.
+		 *
+		 * @param key
+		 * 	The name of the child.
+		 *
+		 * @return The type, or <code>TYPE_END</code> if there is no such child.
+		 *
+		 * @throws IOException
+		 * 	if the data is malformed.
+		 */
+		public int getType(final String key) throws IOException
+		{
+			final Integer offset = index().get(key);
+			return offset != null ? buffer.get(offset) & 0xFF : NBTConstants.TYPE_END;
+		}
+
+		/**
+		 * Gets a child compound, without decoding it.
+		 *
+		 * @param key
+		 * 	The name of the child.
+		 *
+		 * @return The compound, or null if there is no such child or if it is not a compound.
+		 *
+		 * @throws IOException
+		 * 	if the data is malformed.
+		 */
+		public synchronized Compound getCompound(final String key) throws IOException
+		{
+			Compound c = compounds.get(key);
+			if(c == null)
+			{
+				final Integer offset = index().get(key);
+				if(offset == null || (buffer.get(offset) & 0xFF) != NBTConstants.TYPE_COMPOUND)
+				{
+					return null;
+				}
+
+				c = new Compound(key, offset + 3 + (buffer.getShort(offset + 1) & 0xFFFF));
+				compounds.put(key, c);
+			}
+
+			return c;
+		}
+
+		/**
+		 * Decodes a child.
+		 *
+		 * @param key
+		 * 	The name of the child.
+		 *
+		 * @return The tag, or null if there is no such child.
+		 *
+		 * @throws IOException
+		 * 	if the data is malformed.
+		 */
+		public Tag<?> get(final String key) throws IOException
+		{
+			final Integer offset = index().get(key);
+			if(offset == null)
+			{
+				return null;
+			}
+
+			try(final NBTInputStream in = new NBTInputStream(new DataInputStream(new ByteBufferInputStream(buffer, offset))))
+			{
+				return in.readTag();
+			}
+		}
+
+		/**
+		 * Decodes the whole compound.
+		 *
+		 * @return The compound tag.
+		 *
+		 * @throws IOException
+		 * 	if the data is malformed.
+		 */
+		public CompoundTag toTag() throws IOException
+		{
+			final CompoundTag tag = new CompoundTag(name);
+			for(final String key : index().keySet())
+			{
+				tag.put(key, get(key));
+			}
+
+			return tag;
+		}
+
+		private synchronized Map<String, Integer> index() throws IOException
+		{
+			if(index == null)
+			{
+				final Map<String, Integer> children = new LinkedHashMap<>();
+
+				try
+				{
+					int child = payload;
+					int type;
+					while((type = buffer.get(child) & 0xFF) != NBTConstants.TYPE_END)
+					{
+						final int nameLength = buffer.getShort(child + 1) & 0xFFFF;
+						children.put(readString(child + 3, nameLength), child);
+						child = skipPayload(type, child + 3 + nameLength);
+					}
+				}
+				catch(final IndexOutOfBoundsException e)
+				{
+					throw new IOException("[JNBT] Truncated TAG_Compound " + name + ".");
+				}
+
+				index = children;
+			}
+
+			return index;
+		}
+	}
+
+	/**
+	 * An input stream over a buffer, from a given offset.
+	 */
+	private static final class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(final ByteBuffer buffer, final int offset)
+		{
+			this.buffer = buffer.duplicate();
+			this.buffer.position(offset);
+		}
+
+		@Override
+		public int read()
+		{
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+		{
+			if(!buffer.hasRemaining())
+			{
+				return -1;
+			}
+
+			final int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+
+			return count;
+		}
+	}
+}
@@ -37,11 +37,14 @@ package org.jnbt;
 
 // @formatter:on
 
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -64,6 +67,16 @@ public final class NBTOutputStream implements Closeable
 	 */
 	private final DataOutputStream os;
 
+	/**
+	 * Size of the buffer in front of the compressor, so the tiny writes of the tags don't each reach the deflater.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The deflater created by this stream, if any.
+	 */
+	private final Deflater deflater;
+
 	/**
 	 * Creates a new <code>NBTOutputStream</code>, which will write data to the
 	 * specified underlying output stream, GZip-compressed.
@@ -76,7 +89,7 @@ public final class NBTOutputStream implements Closeable
 	 */
 	public NBTOutputStream(final OutputStream os) throws IOException
 	{
-		this.os = new DataOutputStream(new GZIPOutputStream(os));
+		this(os, NBTCompression.GZIP, Deflater.DEFAULT_COMPRESSION);
 	}
 
 	/**
@@ -91,13 +104,50 @@ public final class NBTOutputStream implements Closeable
 	 * @throws IOException
 	 * 	if an I/O error occurs.
 	 */
-	public NBTOutputStream(OutputStream os, final boolean gzipped) throws IOException
+	public NBTOutputStream(final OutputStream os, final boolean gzipped) throws IOException
 	{
-		if(gzipped)
+		this(os, gzipped ? NBTCompression.GZIP : NBTCompression.NONE, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a new <code>NBTOutputStream</code>, which will write data to the
+	 * specified underlying output stream, through a buffer.
+	 *
+	 * @param os
+	 * 	The output stream.
+	 * @param compression
+	 * 	The compression to apply.
+	 * @param level
+	 * 	The compression level, from 0 to 9, or -1 for the default level.
+	 *
+	 * @throws IOException
+	 * 	if an I/O error occurs.
+	 */
+	public NBTOutputStream(final OutputStream os, final NBTCompression compression, final int level) throws IOException
+	{
+		final OutputStream out;
+		switch(compression)
 		{
-			os = new GZIPOutputStream(os);
+			case GZIP:
+				deflater = null;
+				out = new GZIPOutputStream(os, BUFFER_SIZE)
+				{
+					{
+						def.setLevel(level);
+					}
+				};
+				break;
+			case DEFLATE:
+				deflater = new Deflater(level, true);
+				out = new DeflaterOutputStream(os, deflater, BUFFER_SIZE);
+				break;
+			default:
+				deflater = null;
+				out = os;
+				break;
 		}
-		this.os = new DataOutputStream(os);
+
+		this.os = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
 	}
 
 	/**
@@ -375,6 +425,16 @@ public final class NBTOutputStream implements Closeable
 	@Override
 	public void close() throws IOException
 	{
-		os.close();
+		try
+		{
+			os.close();
+		}
+		finally
+		{
+			if(deflater != null)
+			{
+				deflater.end();
+			}
+		}
 	}
 }